@@ -0,0 +1,356 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Thread-safe sum segment tree with the bottom-up layout of SegmentTree. A point update changes its leaf
+ * and then atomically adds the difference to every ancestor, so updates never wait on each other.
+ * <p>
+ * {@link #sum(int, int)} reads the tree as it is and may see updates that are only partly propagated.
+ * {@link #sumSnapshot(int, int)} waits for the updates in flight to finish and holds off new ones
+ * while it reads, so it sees the tree exactly as it was at one point in time.
+ */
+class ConcurrentSegmentTree {
+
+    // longs between two in-flight counters so each one sits on its own cache line
+    private static final int PADDING = 8;
+
+    private final int fSize;
+    private final AtomicLongArray fTree;
+
+    // number of updates in flight, striped by thread so updaters do not share a counter
+    private final AtomicLongArray fInFlight;
+    private final int fStripes;
+
+    private volatile boolean fSnapshotting;
+    private final ReentrantLock fSnapshotLock = new ReentrantLock();
+
+    ConcurrentSegmentTree(long[] arr) {
+        fSize = arr.length;
+        fTree = new AtomicLongArray(2 * fSize);
+        for (int i = 0; i < fSize; i++)
+            fTree.set(fSize + i, arr[i]);
+        for (int i = fSize - 1; i > 0; i--)
+            fTree.set(i, fTree.get(2 * i) + fTree.get(2 * i + 1));
+
+        int stripes = 1;
+        while (stripes < 2 * Runtime.getRuntime().availableProcessors())
+            stripes <<= 1;
+        fStripes = stripes;
+        fInFlight = new AtomicLongArray(stripes * PADDING);
+    }
+
+    /**
+     * Sets the value at index
+     */
+    void update(int index, long val) {
+        if (index < 0 || index >= fSize)
+            return;
+
+        int stripe = enter();
+        try {
+            int i = index + fSize;
+            long delta = val - fTree.getAndSet(i, val);
+            propagate(i, delta);
+        } finally {
+            exit(stripe);
+        }
+    }
+
+    /**
+     * Adds delta to the value at index
+     */
+    void add(int index, long delta) {
+        if (index < 0 || index >= fSize)
+            return;
+
+        int stripe = enter();
+        try {
+            int i = index + fSize;
+            fTree.getAndAdd(i, delta);
+            propagate(i, delta);
+        } finally {
+            exit(stripe);
+        }
+    }
+
+    private void propagate(int leaf, long delta) {
+        if (delta == 0)
+            return;
+        for (int i = leaf >> 1; i > 0; i >>= 1)
+            fTree.getAndAdd(i, delta);
+    }
+
+    /**
+     * Relaxed range sum, never blocks but may count only part of an update that is still running
+     *
+     * @param start start of the range inclusive
+     * @param end   end of the range inclusive
+     */
+    long sum(int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+
+        long ret = 0;
+        for (int low = start + fSize, high = end + fSize + 1; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret += fTree.get(low++);
+            if ((high & 1) == 1)
+                ret += fTree.get(--high);
+        }
+        return ret;
+    }
+
+    /**
+     * Linearizable range sum, briefly stops updates so it reads a tree with no update half applied
+     */
+    long sumSnapshot(int start, int end) {
+        fSnapshotLock.lock();
+        try {
+            fSnapshotting = true;
+            for (int i = 0; i < fStripes; i++) {
+                while (fInFlight.get(i * PADDING) != 0)
+                    Thread.onSpinWait();
+            }
+            return sum(start, end);
+        } finally {
+            fSnapshotting = false;
+            fSnapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Registers an update, first waiting out any snapshot. The counter is raised before the flag is checked
+     * and the snapshot raises the flag before checking the counters, so at least one of them sees the other
+     *
+     * @return stripe to pass to {@link #exit(int)}
+     */
+    private int enter() {
+        int stripe = ((int) Thread.currentThread().getId() & (fStripes - 1)) * PADDING;
+        while (true) {
+            fInFlight.incrementAndGet(stripe);
+            if (!fSnapshotting)
+                return stripe;
+
+            fInFlight.decrementAndGet(stripe);
+            while (fSnapshotting)
+                Thread.onSpinWait();
+        }
+    }
+
+    private void exit(int stripe) {
+        fInFlight.decrementAndGet(stripe);
+    }
+
+    long get(int index) {
+        return fTree.get(index + fSize);
+    }
+
+    int size() {
+        return fSize;
+    }
+}
+
+
+class ConcurrentSegmentTreeTest {
+
+    @Test
+    void testSingleThreaded() {
+        long[] input = new long[]{1, 2, 3, 4, 5, 6};
+        ConcurrentSegmentTree sg = new ConcurrentSegmentTree(input);
+
+        assertEquals(3, sg.sum(0, 1));
+        assertEquals(14, sg.sum(1, 4));
+        assertEquals(21, sg.sumSnapshot(0, 5));
+
+        sg.update(0, 2);
+        sg.add(5, 10);
+        assertEquals(4, sg.sum(0, 1));
+        assertEquals(32, sg.sumSnapshot(0, 5));
+        assertEquals(16, sg.get(5));
+    }
+
+    @Test
+    void testRandomAgainstBruteForce() {
+        Random rand = new Random();
+        long[] input = new long[333];
+        for (int i = 0; i < input.length; i++)
+            input[i] = rand.nextInt(1000);
+        ConcurrentSegmentTree sg = new ConcurrentSegmentTree(input.clone());
+
+        for (int trial = 0; trial < 5000; trial++) {
+            int start = rand.nextInt(input.length);
+            int end = start + rand.nextInt(input.length - start);
+            switch (rand.nextInt(3)) {
+                case 0:
+                    input[start] = rand.nextInt(1000);
+                    sg.update(start, input[start]);
+                    break;
+                case 1:
+                    input[start] += 7;
+                    sg.add(start, 7);
+                    break;
+                default:
+                    long expected = 0;
+                    for (int i = start; i <= end; i++)
+                        expected += input[i];
+                    assertEquals(expected, sg.sum(start, end));
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentAddsConverge() throws Exception {
+        final int threads = 8;
+        final int perThread = 100000;
+        long[] input = new long[1000];
+        ConcurrentSegmentTree sg = new ConcurrentSegmentTree(input);
+        long[] expected = new long[input.length];
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                long[] added = new long[input.length];
+                for (int i = 0; i < perThread; i++) {
+                    int index = rand.nextInt(input.length);
+                    long delta = rand.nextInt(100) - 50;
+                    sg.add(index, delta);
+                    added[index] += delta;
+                }
+                return added;
+            }));
+        }
+
+        for (Future<long[]> future : futures) {
+            long[] added = future.get();
+            for (int i = 0; i < expected.length; i++)
+                expected[i] += added[i];
+        }
+        executor.shutdown();
+
+        // once every update is done each internal node must again be the sum of its leaves
+        for (int start = 0; start < expected.length; start += 37) {
+            long sum = 0;
+            for (int end = start; end < expected.length; end++) {
+                sum += expected[end];
+                if (end % 13 == 0)
+                    assertEquals(sum, sg.sum(start, end));
+            }
+        }
+    }
+
+    @Test
+    void testSnapshotIsLinearizable() throws Exception {
+        final int threads = 4;
+        final int perThread = 200000;
+        ConcurrentSegmentTree sg = new ConcurrentSegmentTree(new long[1024]);
+
+        // started[t] is raised before an add and finished[t] after it, so a consistent total sits in between
+        AtomicLongArray started = new AtomicLongArray(threads);
+        AtomicLongArray finished = new AtomicLongArray(threads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                for (int i = 0; i < perThread; i++) {
+                    started.incrementAndGet(thread);
+                    sg.add(rand.nextInt(1024), 1);
+                    finished.incrementAndGet(thread);
+                }
+            }));
+        }
+
+        int checks = 0;
+        while (!allDone(futures) || checks == 0) {
+            long low = total(finished);
+            long snapshot = sg.sumSnapshot(0, 1023);
+            long high = total(started);
+
+            assertTrue(low <= snapshot && snapshot <= high);
+            checks++;
+        }
+        executor.shutdown();
+
+        assertEquals((long) threads * perThread, sg.sumSnapshot(0, 1023));
+    }
+
+    @Test
+    void testThroughputComparison() throws Exception {
+        final int opsPerThread = 500000;
+        final int size = 1 << 20;
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ConcurrentSegmentTree concurrent = new ConcurrentSegmentTree(new long[size]);
+            measureThroughput(threads, opsPerThread, size, concurrent::add, "Concurrent segment tree");
+
+            LongSegmentTree locked = new LongSegmentTree(new long[size], SegmentTreeOp.SUM);
+            measureThroughput(threads, opsPerThread, size, (index, delta) -> {
+                synchronized (locked) {
+                    locked.update(index, locked.query(index, index) + delta);
+                }
+            }, "Synchronized long segment tree");
+        }
+    }
+
+    private interface Adder {
+        void add(int index, long delta);
+    }
+
+    private void measureThroughput(int threads, int opsPerThread, int size, Adder adder, String name) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                start.await();
+                for (int i = 0; i < opsPerThread; i++)
+                    adder.add(rand.nextInt(size), 1);
+                return null;
+            }));
+        }
+
+        start.await();
+        long startTime = System.nanoTime();
+        for (Future<?> future : futures)
+            future.get();
+        long endTime = System.nanoTime();
+        executor.shutdown();
+
+        long opsPerSecond = (long) threads * opsPerThread * 1000000000L / (endTime - startTime);
+        System.out.println(String.format("Throughput for %s on %s threads %s updates per second", name, threads, opsPerSecond));
+    }
+
+    private boolean allDone(List<Future<?>> futures) throws Exception {
+        for (Future<?> future : futures) {
+            if (!future.isDone())
+                return false;
+        }
+        // surface any exception thrown by the workers
+        for (Future<?> future : futures)
+            future.get();
+        return true;
+    }
+
+    private long total(AtomicLongArray counters) {
+        long total = 0;
+        for (int i = 0; i < counters.length(); i++)
+            total += counters.get(i);
+        return total;
+    }
+}
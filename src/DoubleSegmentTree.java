@@ -0,0 +1,173 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * SegmentTree over doubles for sum, min or max, laid out like LongSegmentTree.
+ * Empty ranges give 0, positive infinity or negative infinity respectively.
+ */
+class DoubleSegmentTree {
+
+    private final int fSize;
+    private final SegmentTreeOp fOp;
+    double[] fTree;
+
+    DoubleSegmentTree(double[] arr, SegmentTreeOp op) {
+        fSize = arr.length;
+        fOp = op;
+        fTree = new double[2 * fSize];
+
+        System.arraycopy(arr, 0, fTree, fSize, fSize);
+        for (int i = fSize - 1; i > 0; i--)
+            fTree[i] = combine(fTree[2 * i], fTree[2 * i + 1]);
+    }
+
+    /**
+     * @param start start of the range inclusive
+     * @param end   end of the range inclusive
+     * @return sum, min or max of the range, or the identity if the range is empty
+     */
+    double query(int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+
+        switch (fOp) {
+            case SUM:
+                return sum(start + fSize, end + fSize + 1);
+            case MIN:
+                return min(start + fSize, end + fSize + 1);
+            default:
+                return max(start + fSize, end + fSize + 1);
+        }
+    }
+
+    void update(int index, double val) {
+        if (index < 0 || index >= fSize)
+            return;
+
+        int i = index + fSize;
+        fTree[i] = val;
+        switch (fOp) {
+            case SUM:
+                for (i >>= 1; i > 0; i >>= 1)
+                    fTree[i] = fTree[2 * i] + fTree[2 * i + 1];
+                break;
+            case MIN:
+                for (i >>= 1; i > 0; i >>= 1)
+                    fTree[i] = Math.min(fTree[2 * i], fTree[2 * i + 1]);
+                break;
+            default:
+                for (i >>= 1; i > 0; i >>= 1)
+                    fTree[i] = Math.max(fTree[2 * i], fTree[2 * i + 1]);
+        }
+    }
+
+    private double sum(int low, int high) {
+        double ret = 0;
+        for (; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret += fTree[low++];
+            if ((high & 1) == 1)
+                ret += fTree[--high];
+        }
+        return ret;
+    }
+
+    private double min(int low, int high) {
+        double ret = Double.POSITIVE_INFINITY;
+        for (; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret = Math.min(ret, fTree[low++]);
+            if ((high & 1) == 1)
+                ret = Math.min(ret, fTree[--high]);
+        }
+        return ret;
+    }
+
+    private double max(int low, int high) {
+        double ret = Double.NEGATIVE_INFINITY;
+        for (; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret = Math.max(ret, fTree[low++]);
+            if ((high & 1) == 1)
+                ret = Math.max(ret, fTree[--high]);
+        }
+        return ret;
+    }
+
+    private double combine(double one, double two) {
+        switch (fOp) {
+            case SUM:
+                return one + two;
+            case MIN:
+                return Math.min(one, two);
+            default:
+                return Math.max(one, two);
+        }
+    }
+
+    SegmentTreeOp op() {
+        return fOp;
+    }
+
+    int size() {
+        return fSize;
+    }
+}
+
+
+class DoubleSegmentTreeTest {
+
+    @Test
+    void testSum() {
+        double[] input = new double[]{0.5, 1.25, 2, 4.75};
+        DoubleSegmentTree sg = new DoubleSegmentTree(input, SegmentTreeOp.SUM);
+
+        assertEquals(8.5, sg.query(0, 3), 1e-9);
+        assertEquals(3.25, sg.query(1, 2), 1e-9);
+
+        sg.update(0, -0.5);
+        assertEquals(7.5, sg.query(0, 3), 1e-9);
+        assertEquals(0, sg.query(3, 2), 1e-9);
+    }
+
+    @Test
+    void testMinMax() {
+        double[] input = new double[]{5.5, 3.25, 8, -2.5, 7, 1};
+        DoubleSegmentTree min = new DoubleSegmentTree(input, SegmentTreeOp.MIN);
+        DoubleSegmentTree max = new DoubleSegmentTree(input, SegmentTreeOp.MAX);
+
+        assertEquals(-2.5, min.query(0, 5), 0);
+        assertEquals(3.25, min.query(0, 2), 0);
+        assertEquals(8, max.query(0, 5), 0);
+
+        assertEquals(Double.POSITIVE_INFINITY, min.query(4, 2), 0);
+        assertEquals(Double.NEGATIVE_INFINITY, max.query(4, 2), 0);
+    }
+
+    @Test
+    void testRandomMaxAgainstBruteForce() {
+        Random rand = new Random();
+        double[] input = new double[1000];
+        for (int i = 0; i < input.length; i++)
+            input[i] = rand.nextGaussian();
+        DoubleSegmentTree sg = new DoubleSegmentTree(input, SegmentTreeOp.MAX);
+
+        for (int trial = 0; trial < 5000; trial++) {
+            int start = rand.nextInt(input.length);
+            int end = start + rand.nextInt(input.length - start);
+            if (rand.nextBoolean()) {
+                input[start] = rand.nextGaussian();
+                sg.update(start, input[start]);
+            } else {
+                double expected = Double.NEGATIVE_INFINITY;
+                for (int i = start; i <= end; i++)
+                    expected = Math.max(expected, input[i]);
+                assertEquals(expected, sg.query(start, end), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Sum segment tree over long indices in [0, range) where every element starts at 0. Nodes are only created
+ * the first time an update reaches them, so memory grows with the number of touched indices times log(range)
+ * instead of with the range. Nodes are int indices into flat arrays, 0 is the root and also stands for
+ * a missing child since the root is never anyone's child.
+ */
+class DynamicSegmentTree {
+    static final long DEFAULT_RANGE = 1L << 62;
+
+    private static final int NONE = 0;
+
+    private final long fRange;
+
+    private int[] fLefts;
+    private int[] fRights;
+    private long[] fSums;
+    private int fNodes;
+
+    // nodes from the root down to the last updated leaf, reused between updates
+    private final int[] fPath = new int[64];
+
+    DynamicSegmentTree() {
+        this(DEFAULT_RANGE);
+    }
+
+    DynamicSegmentTree(long range) {
+        if (range <= 0)
+            throw new IllegalArgumentException("Range must be positive");
+
+        fRange = range;
+        fLefts = new int[16];
+        fRights = new int[16];
+        fSums = new long[16];
+        fNodes = 1;
+    }
+
+    /**
+     * Sets the value at index
+     */
+    void update(long index, long val) {
+        int depth = descend(index);
+        long delta = val - fSums[fPath[depth]];
+        for (int i = 0; i <= depth; i++)
+            fSums[fPath[i]] += delta;
+    }
+
+    /**
+     * Adds delta to the value at index
+     */
+    void add(long index, long delta) {
+        int depth = descend(index);
+        for (int i = 0; i <= depth; i++)
+            fSums[fPath[i]] += delta;
+    }
+
+    /**
+     * Walks from the root to the leaf for index, creating missing nodes and recording them in fPath
+     *
+     * @return depth of the leaf
+     */
+    private int descend(long index) {
+        if (index < 0 || index >= fRange)
+            throw new IndexOutOfBoundsException("Index " + index + " out of range");
+
+        int node = 0;
+        int depth = 0;
+        long low = 0;
+        long high = fRange - 1;
+        fPath[0] = node;
+        while (low < high) {
+            long mid = low + (high - low) / 2;
+            // newNode may replace the arrays, so it has to run before the child slot is looked up
+            if (index <= mid) {
+                if (fLefts[node] == NONE) {
+                    int child = newNode();
+                    fLefts[node] = child;
+                }
+                node = fLefts[node];
+                high = mid;
+            } else {
+                if (fRights[node] == NONE) {
+                    int child = newNode();
+                    fRights[node] = child;
+                }
+                node = fRights[node];
+                low = mid + 1;
+            }
+            fPath[++depth] = node;
+        }
+        return depth;
+    }
+
+    /**
+     * Sums over the given range, parts outside [0, range) and untouched indices count as 0
+     *
+     * @param start start of the range inclusive
+     * @param end   end of the range inclusive
+     */
+    long sum(long start, long end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fRange - 1);
+        if (start > end)
+            return 0;
+        return sum(0, 0, fRange - 1, start, end);
+    }
+
+    private long sum(int node, long low, long high, long start, long end) {
+        if (start <= low && high <= end)
+            return fSums[node];
+
+        long mid = low + (high - low) / 2;
+        long ret = 0;
+        if (start <= mid && fLefts[node] != NONE)
+            ret += sum(fLefts[node], low, mid, start, end);
+        if (end > mid && fRights[node] != NONE)
+            ret += sum(fRights[node], mid + 1, high, start, end);
+        return ret;
+    }
+
+    private int newNode() {
+        if (fNodes == fSums.length) {
+            int capacity = 2 * fSums.length;
+            fLefts = Arrays.copyOf(fLefts, capacity);
+            fRights = Arrays.copyOf(fRights, capacity);
+            fSums = Arrays.copyOf(fSums, capacity);
+        }
+        return fNodes++;
+    }
+
+    int nodes() {
+        return fNodes;
+    }
+
+    long range() {
+        return fRange;
+    }
+}
+
+
+class DynamicSegmentTreeTest {
+
+    @Test
+    void testSparseTimestamps() {
+        DynamicSegmentTree sg = new DynamicSegmentTree();
+        long now = 1700000000000000000L;
+
+        sg.update(now, 5);
+        sg.update(now + 1000, 7);
+        sg.update(3, 1);
+        sg.add(now, 2);
+
+        assertEquals(7, sg.sum(now, now));
+        assertEquals(14, sg.sum(now, now + 1000));
+        assertEquals(15, sg.sum(0, Long.MAX_VALUE));
+        assertEquals(1, sg.sum(0, now - 1));
+        assertEquals(0, sg.sum(now + 1, now + 999));
+
+        sg.update(now + 1000, 0);
+        assertEquals(8, sg.sum(0, Long.MAX_VALUE));
+    }
+
+    @Test
+    void testOutOfRange() {
+        DynamicSegmentTree sg = new DynamicSegmentTree(100);
+        sg.update(99, 4);
+
+        assertEquals(4, sg.sum(-10, 1000));
+        assertThrows(IndexOutOfBoundsException.class, () -> sg.update(100, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> sg.add(-1, 1));
+    }
+
+    @Test
+    void testMemoryGrowsWithTouchedIndices() {
+        DynamicSegmentTree sg = new DynamicSegmentTree();
+        Random rand = new Random();
+        final int touched = 10000;
+        for (int i = 0; i < touched; i++)
+            sg.update(rand.nextLong() & (DynamicSegmentTree.DEFAULT_RANGE - 1), 1);
+
+        // at most one node per level for every touched index
+        assertTrue(sg.nodes() <= 1 + touched * 62);
+        assertEquals(touched, sg.sum(0, Long.MAX_VALUE));
+    }
+
+    @Test
+    void testRandomAgainstBruteForce() {
+        Random rand = new Random();
+        DynamicSegmentTree sg = new DynamicSegmentTree(1L << 40);
+        TreeMap<Long, Long> expected = new TreeMap<>();
+
+        long[] keys = new long[200];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = rand.nextLong() & ((1L << 40) - 1);
+
+        for (int trial = 0; trial < 5000; trial++) {
+            long index = keys[rand.nextInt(keys.length)];
+            switch (rand.nextInt(3)) {
+                case 0:
+                    long val = rand.nextInt(1000);
+                    sg.update(index, val);
+                    expected.put(index, val);
+                    break;
+                case 1:
+                    sg.add(index, 3);
+                    expected.merge(index, 3L, Long::sum);
+                    break;
+                default:
+                    long other = keys[rand.nextInt(keys.length)];
+                    long start = Math.min(index, other);
+                    long end = Math.max(index, other);
+                    long sum = 0;
+                    for (long v : expected.subMap(start, true, end, true).values())
+                        sum += v;
+                    assertEquals(sum, sg.sum(start, end));
+            }
+        }
+    }
+}
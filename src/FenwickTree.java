@@ -0,0 +1,284 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Binary indexed tree with the sum and update contract of SegmentTree. Slot i (1-based) holds the sum of
+ * the i & -i elements ending at element i - 1, so a prefix sum adds up one slot per set bit of its length.
+ * Sums wrap around on overflow just like SegmentTree.
+ * <p>
+ * rangeAdd uses a second pair of trees created on first use. Adding d to [l, r] is the same as adding the
+ * line d * (p - l) to every prefix of length p past l and cancelling it past r, so one tree holds the
+ * slopes and the other the offsets.
+ */
+class FenwickTree implements RangeSum {
+
+    private final int fSize;
+    int[] fTree;
+
+    private int[] fSlopes;
+    private int[] fOffsets;
+
+    FenwickTree(int[] arr) {
+        fSize = arr.length;
+        fTree = new int[fSize + 1];
+        buildTree(arr);
+    }
+
+    /**
+     * Builds in O(n) by pushing each slot into the next slot that covers it
+     */
+    private void buildTree(int[] arr) {
+        System.arraycopy(arr, 0, fTree, 1, fSize);
+        for (int i = 1; i <= fSize; i++) {
+            int parent = i + (i & -i);
+            if (parent <= fSize)
+                fTree[parent] += fTree[i];
+        }
+    }
+
+    /**
+     * Sums over the given range, any part of the range outside the tree is ignored
+     */
+    @Override
+    public int sum(int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+        if (start > end)
+            return 0;
+        return prefix(end + 1) - prefix(start);
+    }
+
+    /**
+     * Sets the value at index
+     */
+    @Override
+    public void update(int index, int val) {
+        if (index < 0 || index >= fSize)
+            return;
+        add(fTree, index + 1, val - get(index));
+    }
+
+    /**
+     * Adds delta to the value at index
+     */
+    void add(int index, int delta) {
+        if (index < 0 || index >= fSize)
+            return;
+        add(fTree, index + 1, delta);
+    }
+
+    /**
+     * Adds delta to every value in the range, any part of the range outside the tree is ignored
+     */
+    void rangeAdd(int start, int end, int delta) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+        if (start > end)
+            return;
+
+        if (fSlopes == null) {
+            fSlopes = new int[fSize + 1];
+            fOffsets = new int[fSize + 1];
+        }
+        add(fSlopes, start + 1, delta);
+        add(fOffsets, start + 1, delta * start);
+        if (end + 1 < fSize) {
+            add(fSlopes, end + 2, -delta);
+            add(fOffsets, end + 2, -delta * (end + 1));
+        }
+    }
+
+    int get(int index) {
+        return sum(index, index);
+    }
+
+    /**
+     * @return sum of the first length elements
+     */
+    private int prefix(int length) {
+        int ret = 0;
+        for (int i = length; i > 0; i &= i - 1)
+            ret += fTree[i];
+        if (fSlopes == null)
+            return ret;
+
+        int slope = 0;
+        int offset = 0;
+        for (int i = length; i > 0; i &= i - 1) {
+            slope += fSlopes[i];
+            offset += fOffsets[i];
+        }
+        return ret + slope * length - offset;
+    }
+
+    private void add(int[] tree, int slot, int delta) {
+        for (; slot <= fSize; slot += slot & -slot)
+            tree[slot] += delta;
+    }
+
+    @Override
+    public int size() {
+        return fSize;
+    }
+}
+
+
+class FenwickTreeTest {
+
+    @Test
+    void testSum() {
+        int[] input = new int[]{1, 2, 3, 4, 5, 6};
+        FenwickTree ft = new FenwickTree(input);
+
+        assertEquals(3, ft.sum(0, 1));
+        assertEquals(14, ft.sum(1, 4));
+        assertEquals(21, ft.sum(0, 5));
+        assertEquals(5, ft.sum(4, 4));
+        assertEquals(21, ft.sum(-3, 10));
+        assertEquals(0, ft.sum(4, 2));
+    }
+
+    @Test
+    void testStructure() {
+        int[] input = new int[]{1, 2, 3, 4, 5, 6};
+        FenwickTree ft = new FenwickTree(input);
+
+        assertEquals(7, ft.fTree.length);
+        assertEquals(1, ft.fTree[1]);
+        assertEquals(3, ft.fTree[2]);
+        assertEquals(3, ft.fTree[3]);
+        assertEquals(10, ft.fTree[4]);
+        assertEquals(5, ft.fTree[5]);
+        assertEquals(11, ft.fTree[6]);
+    }
+
+    @Test
+    void testUpdateAndRangeAdd() {
+        int[] input = new int[]{1, 2, 3, 4, 5, 6, 7};
+        FenwickTree ft = new FenwickTree(input);
+
+        ft.update(0, 2);
+        assertEquals(4, ft.sum(0, 1));
+
+        ft.rangeAdd(1, 3, 10);
+        assertEquals(12, ft.get(1));
+        assertEquals(14, ft.get(3));
+        assertEquals(5, ft.get(4));
+        assertEquals(59, ft.sum(0, 6));
+
+        ft.update(2, 0);
+        assertEquals(46, ft.sum(0, 6));
+        ft.rangeAdd(-5, 100, 1);
+        assertEquals(53, ft.sum(0, 6));
+    }
+
+    @Test
+    void testRandomAgainstBruteForce() {
+        Random rand = new Random();
+        for (int size : new int[]{1, 2, 7, 64, 1000}) {
+            int[] input = generateInput(size, 1000);
+            FenwickTree ft = new FenwickTree(input);
+
+            for (int trial = 0; trial < 5000; trial++) {
+                int start = rand.nextInt(size);
+                int end = start + rand.nextInt(size - start);
+                switch (rand.nextInt(4)) {
+                    case 0:
+                        input[start] = rand.nextInt(1000);
+                        ft.update(start, input[start]);
+                        break;
+                    case 1:
+                        int delta = rand.nextInt(100) - 50;
+                        for (int i = start; i <= end; i++)
+                            input[i] += delta;
+                        ft.rangeAdd(start, end, delta);
+                        break;
+                    default:
+                        int expected = 0;
+                        for (int i = start; i <= end; i++)
+                            expected += input[i];
+                        assertEquals(expected, ft.sum(start, end));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testBackendsAgree() {
+        Random rand = new Random();
+        int[] input = generateInput(777, 1000);
+        RangeSum segmentTree = RangeSum.create(input, RangeSumBackend.SEGMENT_TREE);
+        RangeSum fenwick = RangeSum.create(input, RangeSumBackend.FENWICK);
+        assertTrue(segmentTree instanceof SegmentTree);
+        assertTrue(fenwick instanceof FenwickTree);
+
+        for (int trial = 0; trial < 5000; trial++) {
+            int start = rand.nextInt(input.length);
+            int end = start + rand.nextInt(input.length - start);
+            if (rand.nextBoolean()) {
+                segmentTree.update(start, end);
+                fenwick.update(start, end);
+            } else {
+                assertEquals(segmentTree.sum(start, end), fenwick.sum(start, end));
+            }
+        }
+    }
+
+    @Test
+    void testRuntimeComparison() {
+        final int ops = 1000000;
+        Random rand = new Random();
+        // stops at 10M so the suite runs in a default sized heap
+        for (int size = 1000; size <= 10000000; size *= 10) {
+            int[] input = generateInput(size, 1000);
+            int[] starts = new int[ops];
+            int[] ends = new int[ops];
+            for (int i = 0; i < ops; i++) {
+                starts[i] = rand.nextInt(size);
+                ends[i] = starts[i] + rand.nextInt(size - starts[i]);
+            }
+
+            for (RangeSumBackend backend : RangeSumBackend.values()) {
+                RangeSum[] tree = new RangeSum[1];
+                measureRuntime(() -> tree[0] = RangeSum.create(input, backend),
+                        "Duration for building a " + backend + " of " + size + " elements %s nanoseconds");
+
+                // warm up the JIT before timing
+                long[] total = new long[1];
+                for (int i = 0; i < ops; i++)
+                    total[0] += tree[0].sum(starts[i], ends[i]);
+
+                measureRuntime(() -> {
+                    for (int i = 0; i < ops; i++)
+                        total[0] += tree[0].sum(starts[i], ends[i]);
+                }, "Duration for 1M " + backend + " sums over " + size + " elements %s nanoseconds");
+                measureRuntime(() -> {
+                    for (int i = 0; i < ops; i++)
+                        tree[0].update(starts[i], ends[i]);
+                }, "Duration for 1M " + backend + " updates over " + size + " elements %s nanoseconds");
+                assertTrue(total[0] != 0);
+            }
+        }
+    }
+
+    private int[] generateInput(int size, int maxVal) {
+        Random rand = new Random();
+        int[] input = new int[size];
+        for (int j = 0; j < size; j++) {
+            input[j] = rand.nextInt(maxVal);
+        }
+        return input;
+    }
+
+    private void measureRuntime(Runnable r, String msg) {
+        long startTime = System.nanoTime();
+        r.run();
+        long endTime = System.nanoTime();
+        System.out.println(String.format(msg, (endTime - startTime)));
+    }
+}
@@ -2,41 +2,42 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class HBLTNode {
     int sHeight;
     int fVal;
-    int fSize;
 
     HBLTNode fRight;
     HBLTNode fLeft;
+    HBLTNode fParent;
 }
 
 class HeightBiasedLeftistTree {
     private HBLTNode fHead;
+    private int fSize;
 
     HeightBiasedLeftistTree(int val) {
-        fHead = new HBLTNode();
-        fHead.fVal = val;
-        fHead.sHeight = 1;
-        fHead.fSize = 1;
+        fHead = newNode(val);
+        fSize = 1;
     }
 
     HeightBiasedLeftistTree() {
     }
 
     HeightBiasedLeftistTree(int[] arr) {
-        if (arr.length == 0)
-            return;
+        build(arr);
+    }
 
-        LinkedList<HeightBiasedLeftistTree> result = new LinkedList<>();
-        for (int i : arr) {
-            result.add(new HeightBiasedLeftistTree(i));
-        }
-        build(result);
+    HeightBiasedLeftistTree(IntStream stream) {
+        build(stream.toArray());
     }
 
     void build(LinkedList<HeightBiasedLeftistTree> result) {
@@ -47,7 +48,45 @@ class HeightBiasedLeftistTree {
             one.meld(two);
             result.add(one);
         }
-        fHead = result.pop().fHead;
+        HeightBiasedLeftistTree ret = result.pop();
+        fHead = ret.fHead;
+        fSize = ret.fSize;
+    }
+
+    /**
+     * Builds the tree in O(n) by melding pairs off a FIFO queue, like {@link #build(LinkedList)},
+     * except the queue is a ring buffer over the nodes themselves so no wrappers are created
+     */
+    void build(int[] arr) {
+        int n = arr.length;
+        if (n == 0)
+            return;
+
+        HBLTNode[] queue = new HBLTNode[n];
+        for (int i = 0; i < n; i++)
+            queue[i] = newNode(arr[i]);
+
+        // each meld takes two trees off the front and puts one on the back so the queue never overflows
+        int front = 0;
+        int count = n;
+        while (count > 1) {
+            HBLTNode one = queue[front];
+            HBLTNode two = queue[front + 1 == n ? 0 : front + 1];
+            front = (front + 2) % n;
+            count -= 2;
+
+            queue[(front + count) % n] = meld(one, two);
+            count++;
+        }
+        fHead = meld(fHead, queue[front]);
+        fSize += n;
+    }
+
+    private static HBLTNode newNode(int val) {
+        HBLTNode node = new HBLTNode();
+        node.fVal = val;
+        node.sHeight = 1;
+        return node;
     }
 
     int min() {
@@ -55,16 +94,23 @@ class HeightBiasedLeftistTree {
     }
 
     int size() {
-        return fHead == null ? 0 : fHead.fSize;
+        return fSize;
     }
 
     HBLTNode head() {
         return fHead;
     }
 
-    void add(int newVal) {
-        HeightBiasedLeftistTree newTree = new HeightBiasedLeftistTree(newVal);
-        meld(newTree);
+    /**
+     * Adds newVal to the tree
+     *
+     * @return handle to the new entry, usable with {@link #decreaseKey(HBLTNode, int)} and {@link #delete(HBLTNode)}
+     */
+    HBLTNode add(int newVal) {
+        HBLTNode node = newNode(newVal);
+        fHead = meld(fHead, node);
+        fSize++;
+        return node;
     }
 
     int pop() {
@@ -72,50 +118,209 @@ class HeightBiasedLeftistTree {
             throw new NoSuchElementException("No elements in the tree!");
 
         int ret = min();
-        if (fHead.fLeft == null)
-            fHead = fHead.fRight;
-        else if (fHead.fRight == null)
-            fHead = fHead.fLeft;
-        else {
-            fHead = meld(fHead.fLeft, fHead.fRight);
-        }
+        delete(fHead);
         return ret;
     }
 
+    /**
+     * Pops up to max elements in ascending order into the front of dest
+     *
+     * @return number of elements popped
+     */
+    int popInto(int[] dest, int max) {
+        max = Math.min(max, dest.length);
+        int count = 0;
+        while (count < max && fHead != null) {
+            dest[count++] = fHead.fVal;
+            popHead();
+        }
+        return count;
+    }
+
+    /**
+     * Pops every element in ascending order into action
+     *
+     * @return number of elements popped
+     */
+    int drainTo(IntConsumer action) {
+        int count = 0;
+        while (fHead != null) {
+            action.accept(fHead.fVal);
+            popHead();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Offers the minimum to condition and pops it if accepted, stopping at the first element it rejects
+     *
+     * @return number of elements popped
+     */
+    int popWhile(IntPredicate condition) {
+        int count = 0;
+        while (fHead != null && condition.test(fHead.fVal)) {
+            popHead();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Replaces the head with the meld of its children. The tree is consistent again after every call,
+     * so a batch pop whose callback throws leaves the elements it has not popped yet
+     */
+    private void popHead() {
+        HBLTNode old = fHead;
+        fHead = meld(old.fLeft, old.fRight);
+        detach(old);
+        fSize--;
+    }
+
     void meld(HeightBiasedLeftistTree other) {
         fHead = meld(head(), other.head());
+        fSize += other.fSize;
     }
 
-    private HBLTNode meld(HBLTNode one, HBLTNode two) {
-        if (one == null)
-            return two;
-        if (two == null)
-            return one;
-
-        // swap the two nodes to make sure "one" always has a value smaller than "two"
-        if (one.fVal > two.fVal) {
-            HBLTNode tmp = one;
-            one = two;
-            two = tmp;
+    /**
+     * Lowers the value of an entry already in the tree in O(log n)
+     *
+     * @param node   handle returned by {@link #add(int)}
+     * @param newVal new value, must not be larger than the current one
+     */
+    void decreaseKey(HBLTNode node, int newVal) {
+        checkHandle(node);
+        if (newVal > node.fVal)
+            throw new IllegalArgumentException("New value " + newVal + " is larger than " + node.fVal);
+
+        node.fVal = newVal;
+        HBLTNode parent = node.fParent;
+        if (parent == null || parent.fVal <= newVal)
+            return;
+
+        // the subtree under node is still a valid tree, so cut it out and meld it back in at the top
+        if (parent.fLeft == node)
+            parent.fLeft = null;
+        else parent.fRight = null;
+        node.fParent = null;
+
+        fixHeights(parent);
+        fHead = meld(fHead, node);
+    }
+
+    /**
+     * Removes an entry from the tree in O(log n)
+     *
+     * @param node handle returned by {@link #add(int)}
+     */
+    void delete(HBLTNode node) {
+        checkHandle(node);
+
+        HBLTNode parent = node.fParent;
+        HBLTNode replacement = meld(node.fLeft, node.fRight);
+
+        if (parent == null) {
+            fHead = replacement;
+        } else {
+            if (parent.fLeft == node)
+                parent.fLeft = replacement;
+            else parent.fRight = replacement;
+
+            if (replacement != null)
+                replacement.fParent = parent;
+            fixHeights(parent);
         }
 
-        one.fRight = meld(one.fRight, two);
+        detach(node);
+        fSize--;
+    }
+
+    private static void detach(HBLTNode node) {
+        // a zero sHeight marks the node as no longer being in a tree
+        node.fLeft = null;
+        node.fRight = null;
+        node.fParent = null;
+        node.sHeight = 0;
+    }
+
+    private void checkHandle(HBLTNode node) {
+        if (node == null || node.sHeight == 0)
+            throw new IllegalArgumentException("Node is not in the tree!");
+    }
 
-        int rightSHeight = one.fRight == null ? 0 : one.fRight.sHeight;
-        int leftSHeight = one.fLeft == null ? 0 : one.fLeft.sHeight;
+    /**
+     * Restores the leftist property from node up to the root, stopping early once a node's sHeight is unchanged
+     * since nothing above it can be affected
+     */
+    private void fixHeights(HBLTNode node) {
+        while (node != null) {
+            int sHeight = restoreLeftist(node);
+            if (sHeight == node.sHeight)
+                return;
+
+            node.sHeight = sHeight;
+            node = node.fParent;
+        }
+    }
 
-        int rightSize = one.fRight == null ? 0 : one.fRight.fSize;
-        int leftSize = one.fLeft == null ? 0 : one.fLeft.fSize;
+    /**
+     * Swaps the children of node if its right child has the larger sHeight
+     *
+     * @return what the sHeight of node should be
+     */
+    private static int restoreLeftist(HBLTNode node) {
+        int rightSHeight = node.fRight == null ? 0 : node.fRight.sHeight;
+        int leftSHeight = node.fLeft == null ? 0 : node.fLeft.sHeight;
 
         if (rightSHeight > leftSHeight) {
-            HBLTNode tmp = one.fRight;
-            one.fRight = one.fLeft;
-            one.fLeft = tmp;
+            HBLTNode tmp = node.fRight;
+            node.fRight = node.fLeft;
+            node.fLeft = tmp;
         }
+        return Math.min(rightSHeight, leftSHeight) + 1;
+    }
+
+    /**
+     * Melds the right spines of both trees top-down, then follows the parent links back up fixing heights.
+     * The returned root always has no parent
+     */
+    private HBLTNode meld(HBLTNode one, HBLTNode two) {
+        if (one == null || two == null) {
+            HBLTNode ret = one == null ? two : one;
+            if (ret != null)
+                ret.fParent = null;
+            return ret;
+        }
+
+        HBLTNode top = null;
+        HBLTNode parent = null;
+        while (one != null && two != null) {
+            // swap the two nodes to make sure "one" always has a value smaller than "two"
+            if (one.fVal > two.fVal) {
+                HBLTNode tmp = one;
+                one = two;
+                two = tmp;
+            }
+
+            if (parent == null)
+                top = one;
+            else parent.fRight = one;
+            one.fParent = parent;
+
+            parent = one;
+            one = one.fRight;
+        }
+
+        HBLTNode rest = one == null ? two : one;
+        parent.fRight = rest;
+        rest.fParent = parent;
 
-        one.fSize = rightSize + leftSize + 1;
-        one.sHeight = Math.min(rightSHeight, leftSHeight) + 1;
-        return one;
+        while (true) {
+            parent.sHeight = restoreLeftist(parent);
+            if (parent == top)
+                return top;
+            parent = parent.fParent;
+        }
     }
 }
 
@@ -206,6 +411,120 @@ class HeightBiasedLeftistTreeTest {
         Assertions.assertThrows(NoSuchElementException.class, tree::pop);
     }
 
+    @Test
+    void testParentLinks() {
+        int[] input = generateInput(1000, 100000);
+        HeightBiasedLeftistTree tree = new HeightBiasedLeftistTree(input);
+        for (int i = 0; i < 500; i++)
+            tree.pop();
+
+        assertNull(tree.head().fParent);
+        assertValidTree(tree.head());
+    }
+
+    @Test
+    void testDecreaseKey() {
+        HeightBiasedLeftistTree tree = new HeightBiasedLeftistTree();
+        tree.add(5);
+        HBLTNode ten = tree.add(10);
+        tree.add(3);
+        HBLTNode seven = tree.add(7);
+
+        tree.decreaseKey(ten, 1);
+        assertEquals(1, tree.min());
+        assertEquals(4, tree.size());
+
+        tree.decreaseKey(seven, 6);
+        assertEquals(1, tree.pop());
+        assertEquals(3, tree.pop());
+        assertEquals(5, tree.pop());
+        assertEquals(6, tree.pop());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tree.decreaseKey(seven, 2));
+    }
+
+    @Test
+    void testDecreaseKeyToLarger() {
+        HeightBiasedLeftistTree tree = new HeightBiasedLeftistTree();
+        HBLTNode node = tree.add(5);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tree.decreaseKey(node, 6));
+    }
+
+    @Test
+    void testDelete() {
+        HeightBiasedLeftistTree tree = new HeightBiasedLeftistTree();
+        tree.add(5);
+        HBLTNode ten = tree.add(10);
+        HBLTNode three = tree.add(3);
+        tree.add(7);
+
+        tree.delete(three);
+        assertEquals(3, tree.size());
+        assertEquals(5, tree.min());
+
+        tree.delete(ten);
+        assertEquals(5, tree.pop());
+        assertEquals(7, tree.pop());
+        assertEquals(0, tree.size());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tree.delete(ten));
+    }
+
+    @Test
+    void testRandomDecreaseKeyAndDelete() {
+        Random rand = new Random();
+        HeightBiasedLeftistTree tree = new HeightBiasedLeftistTree();
+        PriorityQueue<Integer> pq = new PriorityQueue<>();
+
+        List<HBLTNode> handles = new ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+            handles.add(tree.add(rand.nextInt(100000)));
+
+        Collections.shuffle(handles, rand);
+        for (int i = 0; i < handles.size(); i++) {
+            HBLTNode node = handles.get(i);
+            if (i % 3 == 0)
+                tree.delete(node);
+            else {
+                if (i % 3 == 1)
+                    tree.decreaseKey(node, node.fVal - rand.nextInt(100000));
+                pq.add(node.fVal);
+            }
+        }
+
+        assertNull(tree.head().fParent);
+        assertValidTree(tree.head());
+        assertEquals(pq.size(), tree.size());
+        while (!pq.isEmpty())
+            assertEquals((int) pq.poll(), tree.pop());
+    }
+
+    /**
+     * Checks heap order, the leftist property, sHeights and parent links
+     *
+     * @return sHeight of the node
+     */
+    private int assertValidTree(HBLTNode node) {
+        if (node == null)
+            return 0;
+
+        if (node.fLeft != null) {
+            assertTrue(node.fLeft.fVal >= node.fVal);
+            assertEquals(node, node.fLeft.fParent);
+        }
+        if (node.fRight != null) {
+            assertTrue(node.fRight.fVal >= node.fVal);
+            assertEquals(node, node.fRight.fParent);
+        }
+
+        int leftSHeight = assertValidTree(node.fLeft);
+        int rightSHeight = assertValidTree(node.fRight);
+        assertTrue(leftSHeight >= rightSHeight);
+        assertEquals(rightSHeight + 1, node.sHeight);
+        return node.sHeight;
+    }
+
     @Test
     void testMinRuntimeComparison() {
         int[] firstArr = generateInput(1000000, 100000);
@@ -247,12 +566,43 @@ class HeightBiasedLeftistTreeTest {
         measureRuntime(() -> hblt.build(tmp),
                 "Duration for height biased leftist tree build %s nanoseconds");
 
+        measureRuntime(() -> new HeightBiasedLeftistTree(firstArr),
+                "Duration for height biased leftist tree array build %s nanoseconds");
+
         List<Integer> firstList = convertToList(firstArr);
 
         measureRuntime(() -> new PriorityQueue<>(firstList),
                 "Duration for priority queue build %s nanoseconds");
     }
 
+    @Test
+    void testArrayBuildMatchesListBuild() {
+        int[] input = generateInput(1000, 100000);
+
+        LinkedList<HeightBiasedLeftistTree> tmp = new LinkedList<>();
+        for (int i : input) {
+            tmp.add(new HeightBiasedLeftistTree(i));
+        }
+        HeightBiasedLeftistTree expected = new HeightBiasedLeftistTree();
+        expected.build(tmp);
+
+        HeightBiasedLeftistTree actual = new HeightBiasedLeftistTree(input);
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.head().sHeight, actual.head().sHeight);
+
+        while (expected.size() > 0)
+            assertEquals(expected.pop(), actual.pop());
+    }
+
+    @Test
+    void testStreamConstruction() {
+        HeightBiasedLeftistTree tree = new HeightBiasedLeftistTree(IntStream.of(5, 4, 3, 2, 1));
+        assertEquals(1, tree.min());
+        assertEquals(4, tree.head().fLeft.fVal);
+        assertEquals(2, tree.head().fRight.fVal);
+        assertEquals(5, tree.size());
+    }
+
     @Test
     void testMergeHBLTRuntime() {
         int[] firstArr = generateInput(1000000, 100000);
@@ -311,6 +661,111 @@ class HeightBiasedLeftistTreeTest {
         assertEquals(pqList, hbltList);
     }
 
+    @Test
+    void testSortedInputStress() {
+        final int size = 10000000;
+        HeightBiasedLeftistTree hblt = new HeightBiasedLeftistTree();
+
+        measureRuntime(() -> {
+            for (int i = 0; i < size; i++)
+                hblt.add(i);
+        }, "Duration for height biased leftist tree sorted insert %s nanoseconds");
+
+        HeightBiasedLeftistTree other = new HeightBiasedLeftistTree();
+        for (int i = size; i > 0; i--)
+            other.add(-i);
+
+        hblt.meld(other);
+        assertEquals(2 * size, hblt.size());
+
+        for (int i = size; i > size - 1000; i--)
+            assertEquals(-i, hblt.pop());
+    }
+
+    @Test
+    void testPopInto() {
+        HeightBiasedLeftistTree tree = new HeightBiasedLeftistTree(new int[]{1, 2, 5, 10, 3});
+        int[] dest = new int[3];
+
+        assertEquals(3, tree.popInto(dest, 5));
+        assertArrayEquals(new int[]{1, 2, 3}, dest);
+        assertEquals(2, tree.size());
+
+        assertEquals(2, tree.popInto(dest, 3));
+        assertEquals(5, dest[0]);
+        assertEquals(10, dest[1]);
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.popInto(dest, 3));
+    }
+
+    @Test
+    void testDrainTo() {
+        HeightBiasedLeftistTree tree = new HeightBiasedLeftistTree(new int[]{4, 8, 1, 3});
+        List<Integer> drained = new ArrayList<>();
+
+        assertEquals(4, tree.drainTo(drained::add));
+        assertEquals(Arrays.asList(1, 3, 4, 8), drained);
+        assertEquals(0, tree.size());
+    }
+
+    @Test
+    void testBatchPopsKeepHeapWhenCallbackThrows() {
+        HeightBiasedLeftistTree heap = new HeightBiasedLeftistTree(new int[]{4, 8, 1, 3});
+        List<Integer> drained = new ArrayList<>();
+        Assertions.assertThrows(IllegalStateException.class, () -> heap.drainTo(val -> {
+            if (val == 4)
+                throw new IllegalStateException();
+            drained.add(val);
+        }));
+        assertEquals(Arrays.asList(1, 3), drained);
+        assertEquals(2, heap.size());
+
+        Assertions.assertThrows(IllegalStateException.class, () -> heap.popWhile(val -> {
+            if (val == 8)
+                throw new IllegalStateException();
+            return true;
+        }));
+        assertEquals(1, heap.size());
+        assertEquals(8, heap.pop());
+        assertEquals(0, heap.size());
+    }
+
+    @Test
+    void testPopWhile() {
+        HeightBiasedLeftistTree tree = new HeightBiasedLeftistTree();
+        tree.add(4);
+        tree.add(8);
+        HBLTNode one = tree.add(1);
+        tree.add(6);
+
+        assertEquals(2, tree.popWhile(val -> val < 5));
+        assertEquals(6, tree.min());
+        assertEquals(2, tree.size());
+
+        // popped handles are no longer usable
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tree.delete(one));
+    }
+
+    @Test
+    void testBatchHeapSortRuntimeComparison() {
+        int[] firstArr = generateInput(1000000, 100000);
+        HeightBiasedLeftistTree hblt = new HeightBiasedLeftistTree(firstArr);
+        HeightBiasedLeftistTree hblt2 = new HeightBiasedLeftistTree(firstArr);
+
+        int[] expected = new int[firstArr.length];
+        int[] actual = new int[firstArr.length];
+
+        measureRuntime(() -> {
+            for (int i = 0; i < expected.length; i++)
+                expected[i] = hblt.pop();
+        }, "Duration for height biased leftist tree per element heapsort %s nanoseconds");
+
+        measureRuntime(() -> hblt2.popInto(actual, actual.length),
+                "Duration for height biased leftist tree batch heapsort %s nanoseconds");
+
+        assertArrayEquals(expected, actual);
+    }
+
     private List<Integer> convertToList(int[] input) {
         List<Integer> ret = new ArrayList<>();
         for (int i : input)
@@ -0,0 +1,241 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * SegmentTree over ints for sum, min or max, laid out like LongSegmentTree.
+ * Sums wrap around on overflow just like SegmentTree, use LongSegmentTree for counters.
+ */
+class IntSegmentTree {
+
+    private final int fSize;
+    private final SegmentTreeOp fOp;
+    int[] fTree;
+
+    IntSegmentTree(int[] arr, SegmentTreeOp op) {
+        fSize = arr.length;
+        fOp = op;
+        fTree = new int[2 * fSize];
+
+        System.arraycopy(arr, 0, fTree, fSize, fSize);
+        for (int i = fSize - 1; i > 0; i--)
+            fTree[i] = combine(fTree[2 * i], fTree[2 * i + 1]);
+    }
+
+    /**
+     * @param start start of the range inclusive
+     * @param end   end of the range inclusive
+     * @return sum, min or max of the range, or the identity if the range is empty
+     */
+    int query(int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+
+        switch (fOp) {
+            case SUM:
+                return sum(start + fSize, end + fSize + 1);
+            case MIN:
+                return min(start + fSize, end + fSize + 1);
+            default:
+                return max(start + fSize, end + fSize + 1);
+        }
+    }
+
+    void update(int index, int val) {
+        if (index < 0 || index >= fSize)
+            return;
+
+        int i = index + fSize;
+        fTree[i] = val;
+        switch (fOp) {
+            case SUM:
+                for (i >>= 1; i > 0; i >>= 1)
+                    fTree[i] = fTree[2 * i] + fTree[2 * i + 1];
+                break;
+            case MIN:
+                for (i >>= 1; i > 0; i >>= 1)
+                    fTree[i] = Math.min(fTree[2 * i], fTree[2 * i + 1]);
+                break;
+            default:
+                for (i >>= 1; i > 0; i >>= 1)
+                    fTree[i] = Math.max(fTree[2 * i], fTree[2 * i + 1]);
+        }
+    }
+
+    /**
+     * First index in [start, end] whose value is at least x, for trees built with MAX. Covering nodes are
+     * checked left to right like in query and the first one whose max reaches x is descended into
+     *
+     * @return the index, or -1 if no value in the range is that large
+     */
+    int firstAtLeast(int start, int end, int x) {
+        if (fOp != SegmentTreeOp.MAX)
+            throw new IllegalStateException("firstAtLeast needs a MAX tree");
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+
+        int[] right = new int[32];
+        int top = 0;
+        for (int low = start + fSize, high = end + fSize + 1; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1) {
+                if (fTree[low] >= x)
+                    return firstAtLeastIn(low, x);
+                low++;
+            }
+            if ((high & 1) == 1)
+                right[top++] = --high;
+        }
+        while (top > 0) {
+            int node = right[--top];
+            if (fTree[node] >= x)
+                return firstAtLeastIn(node, x);
+        }
+        return -1;
+    }
+
+    private int firstAtLeastIn(int node, int x) {
+        while (node < fSize) {
+            node *= 2;
+            if (fTree[node] < x)
+                node++;
+        }
+        return node - fSize;
+    }
+
+    private int sum(int low, int high) {
+        int ret = 0;
+        for (; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret += fTree[low++];
+            if ((high & 1) == 1)
+                ret += fTree[--high];
+        }
+        return ret;
+    }
+
+    private int min(int low, int high) {
+        int ret = Integer.MAX_VALUE;
+        for (; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret = Math.min(ret, fTree[low++]);
+            if ((high & 1) == 1)
+                ret = Math.min(ret, fTree[--high]);
+        }
+        return ret;
+    }
+
+    private int max(int low, int high) {
+        int ret = Integer.MIN_VALUE;
+        for (; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret = Math.max(ret, fTree[low++]);
+            if ((high & 1) == 1)
+                ret = Math.max(ret, fTree[--high]);
+        }
+        return ret;
+    }
+
+    private int combine(int one, int two) {
+        switch (fOp) {
+            case SUM:
+                return one + two;
+            case MIN:
+                return Math.min(one, two);
+            default:
+                return Math.max(one, two);
+        }
+    }
+
+    SegmentTreeOp op() {
+        return fOp;
+    }
+
+    int size() {
+        return fSize;
+    }
+}
+
+
+class IntSegmentTreeTest {
+
+    @Test
+    void testMatchesSegmentTree() {
+        int[] input = new int[]{1, 2, 3, 4, 5, 6};
+        IntSegmentTree sg = new IntSegmentTree(input, SegmentTreeOp.SUM);
+        SegmentTree expected = new SegmentTree(input);
+
+        for (int start = 0; start < input.length; start++) {
+            for (int end = start; end < input.length; end++)
+                assertEquals(expected.sum(start, end), sg.query(start, end));
+        }
+    }
+
+    @Test
+    void testMinMax() {
+        int[] input = new int[]{5, 3, 8, -2, 7, 1};
+        IntSegmentTree min = new IntSegmentTree(input, SegmentTreeOp.MIN);
+        IntSegmentTree max = new IntSegmentTree(input, SegmentTreeOp.MAX);
+
+        assertEquals(-2, min.query(0, 5));
+        assertEquals(3, min.query(0, 2));
+        assertEquals(8, max.query(0, 5));
+        assertEquals(7, max.query(3, 5));
+
+        min.update(3, 10);
+        max.update(2, 0);
+        assertEquals(1, min.query(0, 5));
+        assertEquals(7, max.query(0, 5));
+    }
+
+    @Test
+    void testRandomMinAgainstBruteForce() {
+        Random rand = new Random();
+        int[] input = new int[1000];
+        for (int i = 0; i < input.length; i++)
+            input[i] = rand.nextInt();
+        IntSegmentTree sg = new IntSegmentTree(input, SegmentTreeOp.MIN);
+
+        for (int trial = 0; trial < 5000; trial++) {
+            int start = rand.nextInt(input.length);
+            int end = start + rand.nextInt(input.length - start);
+            if (rand.nextBoolean()) {
+                input[start] = rand.nextInt();
+                sg.update(start, input[start]);
+            } else {
+                int expected = Integer.MAX_VALUE;
+                for (int i = start; i <= end; i++)
+                    expected = Math.min(expected, input[i]);
+                assertEquals(expected, sg.query(start, end));
+            }
+        }
+    }
+
+    @Test
+    void testFirstAtLeastAgainstBruteForce() {
+        Random rand = new Random();
+        int[] input = new int[1000];
+        for (int i = 0; i < input.length; i++)
+            input[i] = rand.nextInt(100000);
+        IntSegmentTree max = new IntSegmentTree(input, SegmentTreeOp.MAX);
+
+        for (int trial = 0; trial < 5000; trial++) {
+            int start = rand.nextInt(input.length);
+            int end = start + rand.nextInt(input.length - start);
+            if (rand.nextBoolean()) {
+                input[start] = rand.nextInt(100000);
+                max.update(start, input[start]);
+            } else {
+                int x = rand.nextInt(100100);
+                int expected = -1;
+                for (int i = start; i <= end && expected == -1; i++) {
+                    if (input[i] >= x)
+                        expected = i;
+                }
+                assertEquals(expected, max.firstAtLeast(start, end, x));
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Segment tree that also supports adding to or assigning a whole range in O(log n).
+ * Range updates stop at the nodes that cover the range and leave a tag there, tags are pushed
+ * down to the children only when a later operation has to go below that node.
+ * <p>
+ * The tree is padded to a power of two so node i covers a fixed range and its children are 2i and 2i + 1,
+ * the padding is never touched since every operation is clamped to the real elements.
+ */
+class LazySegmentTree {
+
+    private final int fSize;
+    private final int fCapacity;
+
+    private final int[] fSums;
+
+    // pending add for the children of a node
+    private final int[] fAdds;
+
+    // pending assignment for the children of a node, applied before any pending add
+    private final int[] fAssigns;
+    private final boolean[] fHasAssign;
+
+    LazySegmentTree(int[] arr) {
+        fSize = arr.length;
+        int capacity = 1;
+        while (capacity < fSize)
+            capacity <<= 1;
+        fCapacity = capacity;
+
+        fSums = new int[2 * capacity];
+        fAdds = new int[2 * capacity];
+        fAssigns = new int[2 * capacity];
+        fHasAssign = new boolean[2 * capacity];
+
+        System.arraycopy(arr, 0, fSums, capacity, fSize);
+        for (int i = capacity - 1; i > 0; i--)
+            fSums[i] = fSums[2 * i] + fSums[2 * i + 1];
+    }
+
+    /**
+     * @param start start of the range inclusive
+     * @param end   end of the range inclusive
+     * @return the sum
+     */
+    int sum(int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+        if (start > end)
+            return 0;
+        return sum(start, end, 1, 0, fCapacity - 1);
+    }
+
+    private int sum(int start, int end, int node, int low, int high) {
+        if (start <= low && high <= end)
+            return fSums[node];
+
+        push(node, high - low + 1);
+        int mid = low + (high - low) / 2;
+        int ret = 0;
+        if (start <= mid)
+            ret += sum(start, end, 2 * node, low, mid);
+        if (end > mid)
+            ret += sum(start, end, 2 * node + 1, mid + 1, high);
+        return ret;
+    }
+
+    void update(int index, int val) {
+        rangeAssign(index, index, val);
+    }
+
+    /**
+     * Adds delta to every element in [start, end]
+     */
+    void rangeAdd(int start, int end, int delta) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+        if (start <= end)
+            rangeAdd(start, end, delta, 1, 0, fCapacity - 1);
+    }
+
+    private void rangeAdd(int start, int end, int delta, int node, int low, int high) {
+        if (start <= low && high <= end) {
+            applyAdd(node, high - low + 1, delta);
+            return;
+        }
+
+        push(node, high - low + 1);
+        int mid = low + (high - low) / 2;
+        if (start <= mid)
+            rangeAdd(start, end, delta, 2 * node, low, mid);
+        if (end > mid)
+            rangeAdd(start, end, delta, 2 * node + 1, mid + 1, high);
+        fSums[node] = fSums[2 * node] + fSums[2 * node + 1];
+    }
+
+    /**
+     * Sets every element in [start, end] to val
+     */
+    void rangeAssign(int start, int end, int val) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+        if (start <= end)
+            rangeAssign(start, end, val, 1, 0, fCapacity - 1);
+    }
+
+    private void rangeAssign(int start, int end, int val, int node, int low, int high) {
+        if (start <= low && high <= end) {
+            applyAssign(node, high - low + 1, val);
+            return;
+        }
+
+        push(node, high - low + 1);
+        int mid = low + (high - low) / 2;
+        if (start <= mid)
+            rangeAssign(start, end, val, 2 * node, low, mid);
+        if (end > mid)
+            rangeAssign(start, end, val, 2 * node + 1, mid + 1, high);
+        fSums[node] = fSums[2 * node] + fSums[2 * node + 1];
+    }
+
+    private void applyAdd(int node, int length, int delta) {
+        fSums[node] += delta * length;
+        if (node >= fCapacity)
+            return;
+
+        // an add on top of a pending assignment just changes what gets assigned
+        if (fHasAssign[node])
+            fAssigns[node] += delta;
+        else fAdds[node] += delta;
+    }
+
+    private void applyAssign(int node, int length, int val) {
+        fSums[node] = val * length;
+        if (node >= fCapacity)
+            return;
+
+        fHasAssign[node] = true;
+        fAssigns[node] = val;
+        fAdds[node] = 0;
+    }
+
+    /**
+     * Moves the tags of node down to its two children
+     *
+     * @param length number of elements covered by node
+     */
+    private void push(int node, int length) {
+        int half = length / 2;
+        if (fHasAssign[node]) {
+            applyAssign(2 * node, half, fAssigns[node]);
+            applyAssign(2 * node + 1, half, fAssigns[node]);
+            fHasAssign[node] = false;
+        }
+        if (fAdds[node] != 0) {
+            applyAdd(2 * node, half, fAdds[node]);
+            applyAdd(2 * node + 1, half, fAdds[node]);
+            fAdds[node] = 0;
+        }
+    }
+
+    int size() {
+        return fSize;
+    }
+}
+
+
+class LazySegmentTreeTest {
+
+    @Test
+    void testSumMatchesSegmentTree() {
+        int[] input = new int[]{1, 2, 3, 4, 5, 6};
+        LazySegmentTree sg = new LazySegmentTree(input);
+
+        assertEquals(3, sg.sum(0, 1));
+        assertEquals(14, sg.sum(1, 4));
+        assertEquals(21, sg.sum(0, 5));
+        assertEquals(5, sg.sum(4, 4));
+        assertEquals(18, sg.sum(2, 5));
+        assertEquals(21, sg.sum(-3, 10));
+    }
+
+    @Test
+    void testRangeAdd() {
+        int[] input = new int[]{1, 2, 3, 4, 5, 6, 7};
+        LazySegmentTree sg = new LazySegmentTree(input);
+
+        sg.rangeAdd(1, 4, 10);
+        assertEquals(68, sg.sum(0, 6));
+        assertEquals(13, sg.sum(2, 2));
+        assertEquals(35, sg.sum(3, 5));
+    }
+
+    @Test
+    void testRangeAssign() {
+        int[] input = new int[]{1, 2, 3, 4, 5, 6, 7};
+        LazySegmentTree sg = new LazySegmentTree(input);
+
+        sg.rangeAssign(2, 5, 0);
+        assertEquals(10, sg.sum(0, 6));
+
+        sg.rangeAdd(0, 3, 1);
+        assertEquals(14, sg.sum(0, 6));
+        assertEquals(1, sg.sum(3, 3));
+
+        sg.update(3, 9);
+        assertEquals(9, sg.sum(3, 3));
+        assertEquals(22, sg.sum(0, 6));
+    }
+
+    @Test
+    void testRandomAgainstBruteForce() {
+        Random rand = new Random();
+        for (int size : new int[]{1, 7, 64, 1000}) {
+            int[] input = generateInput(size, 100);
+            LazySegmentTree sg = new LazySegmentTree(input);
+
+            for (int trial = 0; trial < 10000; trial++) {
+                int start = rand.nextInt(size);
+                int end = start + rand.nextInt(size - start);
+                int val = rand.nextInt(200) - 100;
+
+                switch (rand.nextInt(4)) {
+                    case 0:
+                        for (int i = start; i <= end; i++)
+                            input[i] += val;
+                        sg.rangeAdd(start, end, val);
+                        break;
+                    case 1:
+                        for (int i = start; i <= end; i++)
+                            input[i] = val;
+                        sg.rangeAssign(start, end, val);
+                        break;
+                    case 2:
+                        input[start] = val;
+                        sg.update(start, val);
+                        break;
+                    default:
+                        int expected = 0;
+                        for (int i = start; i <= end; i++)
+                            expected += input[i];
+                        assertEquals(expected, sg.sum(start, end));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testRangeAddRuntimeComparison() {
+        final int updates = 10000;
+        int[] input = generateInput(1000000, 1000);
+        LazySegmentTree lazy = new LazySegmentTree(input);
+        SegmentTree sg = new SegmentTree(input);
+
+        Random rand = new Random();
+        int[] starts = new int[updates];
+        for (int i = 0; i < updates; i++)
+            starts[i] = rand.nextInt(input.length - 5000);
+
+        measureRuntime(() -> {
+            for (int start : starts)
+                lazy.rangeAdd(start, start + 4999, 1);
+        }, "Duration for 10K lazy segment tree range adds %s nanoseconds");
+
+        measureRuntime(() -> {
+            for (int start : starts) {
+                for (int i = start; i < start + 5000; i++)
+                    sg.update(i, sg.sum(i, i) + 1);
+            }
+        }, "Duration for 10K segment tree range adds by point update %s nanoseconds");
+
+        assertEquals(sg.sum(0, input.length - 1), lazy.sum(0, input.length - 1));
+    }
+
+    private int[] generateInput(int size, int maxVal) {
+        Random rand = new Random();
+        int[] input = new int[size];
+        for (int j = 0; j < size; j++) {
+            input[j] = rand.nextInt(maxVal);
+        }
+        return input;
+    }
+
+    private void measureRuntime(Runnable r, String msg) {
+        long startTime = System.nanoTime();
+        r.run();
+        long endTime = System.nanoTime();
+        System.out.println(String.format(msg, (endTime - startTime)));
+    }
+}
@@ -0,0 +1,319 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * SegmentTree over longs for sum, min or max. The operation is fixed at construction and each one
+ * has its own query and update loop, so nothing on the hot path is boxed or called through an interface.
+ */
+class LongSegmentTree {
+
+    private final int fSize;
+    private final SegmentTreeOp fOp;
+    long[] fTree;
+
+    LongSegmentTree(long[] arr, SegmentTreeOp op) {
+        fSize = arr.length;
+        fOp = op;
+        fTree = new long[2 * fSize];
+
+        System.arraycopy(arr, 0, fTree, fSize, fSize);
+        for (int i = fSize - 1; i > 0; i--)
+            fTree[i] = combine(fTree[2 * i], fTree[2 * i + 1]);
+    }
+
+    /**
+     * @param start start of the range inclusive
+     * @param end   end of the range inclusive
+     * @return sum, min or max of the range, or the identity if the range is empty
+     */
+    long query(int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+
+        switch (fOp) {
+            case SUM:
+                return sum(start + fSize, end + fSize + 1);
+            case MIN:
+                return min(start + fSize, end + fSize + 1);
+            default:
+                return max(start + fSize, end + fSize + 1);
+        }
+    }
+
+    void update(int index, long val) {
+        if (index < 0 || index >= fSize)
+            return;
+
+        int i = index + fSize;
+        fTree[i] = val;
+        switch (fOp) {
+            case SUM:
+                for (i >>= 1; i > 0; i >>= 1)
+                    fTree[i] = fTree[2 * i] + fTree[2 * i + 1];
+                break;
+            case MIN:
+                for (i >>= 1; i > 0; i >>= 1)
+                    fTree[i] = Math.min(fTree[2 * i], fTree[2 * i + 1]);
+                break;
+            default:
+                for (i >>= 1; i > 0; i >>= 1)
+                    fTree[i] = Math.max(fTree[2 * i], fTree[2 * i + 1]);
+        }
+    }
+
+    /**
+     * First index in [start, end] whose value is at least x, for trees built with MAX. Covering nodes are
+     * checked left to right like in query and the first one whose max reaches x is descended into
+     *
+     * @return the index, or -1 if no value in the range is that large
+     */
+    int firstAtLeast(int start, int end, long x) {
+        if (fOp != SegmentTreeOp.MAX)
+            throw new IllegalStateException("firstAtLeast needs a MAX tree");
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+
+        int[] right = new int[32];
+        int top = 0;
+        for (int low = start + fSize, high = end + fSize + 1; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1) {
+                if (fTree[low] >= x)
+                    return firstAtLeastIn(low, x);
+                low++;
+            }
+            if ((high & 1) == 1)
+                right[top++] = --high;
+        }
+        while (top > 0) {
+            int node = right[--top];
+            if (fTree[node] >= x)
+                return firstAtLeastIn(node, x);
+        }
+        return -1;
+    }
+
+    private int firstAtLeastIn(int node, long x) {
+        while (node < fSize) {
+            node *= 2;
+            if (fTree[node] < x)
+                node++;
+        }
+        return node - fSize;
+    }
+
+    private long sum(int low, int high) {
+        long ret = 0;
+        for (; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret += fTree[low++];
+            if ((high & 1) == 1)
+                ret += fTree[--high];
+        }
+        return ret;
+    }
+
+    private long min(int low, int high) {
+        long ret = Long.MAX_VALUE;
+        for (; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret = Math.min(ret, fTree[low++]);
+            if ((high & 1) == 1)
+                ret = Math.min(ret, fTree[--high]);
+        }
+        return ret;
+    }
+
+    private long max(int low, int high) {
+        long ret = Long.MIN_VALUE;
+        for (; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret = Math.max(ret, fTree[low++]);
+            if ((high & 1) == 1)
+                ret = Math.max(ret, fTree[--high]);
+        }
+        return ret;
+    }
+
+    private long combine(long one, long two) {
+        switch (fOp) {
+            case SUM:
+                return one + two;
+            case MIN:
+                return Math.min(one, two);
+            default:
+                return Math.max(one, two);
+        }
+    }
+
+    SegmentTreeOp op() {
+        return fOp;
+    }
+
+    int size() {
+        return fSize;
+    }
+}
+
+
+class LongSegmentTreeTest {
+
+    @Test
+    void testSumDoesNotOverflow() {
+        long[] input = new long[]{Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+        LongSegmentTree sg = new LongSegmentTree(input, SegmentTreeOp.SUM);
+
+        assertEquals(3L * Integer.MAX_VALUE, sg.query(0, 2));
+        sg.update(1, Long.MAX_VALUE / 4);
+        assertEquals(Long.MAX_VALUE / 4 + Integer.MAX_VALUE, sg.query(1, 2));
+    }
+
+    @Test
+    void testMinMax() {
+        long[] input = new long[]{5, 3, 8, -2, 7, 1};
+        LongSegmentTree min = new LongSegmentTree(input, SegmentTreeOp.MIN);
+        LongSegmentTree max = new LongSegmentTree(input, SegmentTreeOp.MAX);
+
+        assertEquals(-2, min.query(0, 5));
+        assertEquals(3, min.query(0, 2));
+        assertEquals(8, max.query(0, 5));
+        assertEquals(7, max.query(3, 5));
+
+        min.update(3, 10);
+        max.update(2, 0);
+        assertEquals(1, min.query(0, 5));
+        assertEquals(7, max.query(0, 5));
+
+        assertEquals(Long.MAX_VALUE, min.query(4, 2));
+        assertEquals(Long.MIN_VALUE, max.query(4, 2));
+    }
+
+    @Test
+    void testRandomAgainstBruteForce() {
+        Random rand = new Random();
+        for (SegmentTreeOp op : SegmentTreeOp.values()) {
+            long[] input = new long[777];
+            for (int i = 0; i < input.length; i++)
+                input[i] = rand.nextLong() >> 8;
+            LongSegmentTree sg = new LongSegmentTree(input, op);
+
+            for (int trial = 0; trial < 5000; trial++) {
+                int start = rand.nextInt(input.length);
+                int end = start + rand.nextInt(input.length - start);
+                if (rand.nextBoolean()) {
+                    input[start] = rand.nextLong() >> 8;
+                    sg.update(start, input[start]);
+                } else {
+                    long expected = input[start];
+                    for (int i = start + 1; i <= end; i++) {
+                        if (op == SegmentTreeOp.SUM)
+                            expected += input[i];
+                        else if (op == SegmentTreeOp.MIN)
+                            expected = Math.min(expected, input[i]);
+                        else expected = Math.max(expected, input[i]);
+                    }
+                    assertEquals(expected, sg.query(start, end));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSumRuntimeComparison() {
+        final int queries = 1000000;
+        Random rand = new Random();
+        int[] input = new int[1000000];
+        long[] longInput = new long[input.length];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = rand.nextInt(1000);
+            longInput[i] = input[i];
+        }
+
+        int[] starts = new int[queries];
+        int[] ends = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            starts[i] = rand.nextInt(input.length);
+            ends[i] = starts[i] + rand.nextInt(input.length - starts[i]);
+        }
+
+        SegmentTree sg = new SegmentTree(input);
+        LongSegmentTree longSg = new LongSegmentTree(longInput, SegmentTreeOp.SUM);
+        LongSegmentTree longMin = new LongSegmentTree(longInput, SegmentTreeOp.MIN);
+
+        // run each a few times so the comparison is not just measuring the JIT
+        long[] totals = new long[3];
+        for (int round = 0; round < 3; round++) {
+            measureRuntime(() -> {
+                for (int i = 0; i < queries; i++)
+                    totals[0] += sg.sum(starts[i], ends[i]);
+            }, "Duration for 1M segment tree sums %s nanoseconds");
+
+            measureRuntime(() -> {
+                for (int i = 0; i < queries; i++)
+                    totals[1] += longSg.query(starts[i], ends[i]);
+            }, "Duration for 1M long segment tree sums %s nanoseconds");
+
+            measureRuntime(() -> {
+                for (int i = 0; i < queries; i++)
+                    totals[2] += longMin.query(starts[i], ends[i]);
+            }, "Duration for 1M long segment tree mins %s nanoseconds");
+        }
+        assertTrue(totals[1] > 0);
+        assertTrue(totals[2] >= 0);
+    }
+
+    @Test
+    void testFirstAtLeast() {
+        long[] input = new long[]{5, 3, 8, -2, 7, 1, 9};
+        LongSegmentTree max = new LongSegmentTree(input, SegmentTreeOp.MAX);
+
+        assertEquals(0, max.firstAtLeast(0, 6, 5));
+        assertEquals(2, max.firstAtLeast(0, 6, 6));
+        assertEquals(4, max.firstAtLeast(3, 6, 7));
+        assertEquals(6, max.firstAtLeast(3, 6, 8));
+        assertEquals(-1, max.firstAtLeast(0, 5, 9));
+        assertEquals(-1, max.firstAtLeast(4, 3, Long.MIN_VALUE));
+
+        max.update(5, 100);
+        assertEquals(5, max.firstAtLeast(3, 6, 10));
+
+        LongSegmentTree sum = new LongSegmentTree(input, SegmentTreeOp.SUM);
+        assertThrows(IllegalStateException.class, () -> sum.firstAtLeast(0, 6, 1));
+    }
+
+    @Test
+    void testFirstAtLeastAgainstBruteForce() {
+        Random rand = new Random();
+        for (int size = 1; size < 100; size++) {
+            long[] input = new long[size];
+            for (int i = 0; i < size; i++)
+                input[i] = rand.nextInt(50);
+            LongSegmentTree max = new LongSegmentTree(input, SegmentTreeOp.MAX);
+
+            for (int trial = 0; trial < 200; trial++) {
+                int start = rand.nextInt(size);
+                int end = start + rand.nextInt(size - start);
+                long x = rand.nextInt(55);
+
+                int expected = -1;
+                for (int i = start; i <= end && expected == -1; i++) {
+                    if (input[i] >= x)
+                        expected = i;
+                }
+                assertEquals(expected, max.firstAtLeast(start, end, x));
+            }
+        }
+    }
+
+    private void measureRuntime(Runnable r, String msg) {
+        long startTime = System.nanoTime();
+        r.run();
+        long endTime = System.nanoTime();
+        System.out.println(String.format(msg, (endTime - startTime)));
+    }
+}
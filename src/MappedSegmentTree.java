@@ -0,0 +1,301 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * Sum segment tree kept in a memory-mapped file, laid out bottom-up like SegmentTree but with long nodes.
+ * Opening an existing file only maps it, so startup does not depend on the size of the tree, and queries
+ * and updates work directly on the mapped pages. Updates reach the disk when the OS writes the pages back
+ * or when {@link #force()} is called as a checkpoint.
+ * <p>
+ * File format: magic, format version (ints), element count n (long), then the 2n nodes as longs.
+ * A single mapping is limited to 2GB so the nodes are mapped in 1GB chunks.
+ */
+class MappedSegmentTree implements AutoCloseable {
+    private static final int MAGIC = 0x53545245;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    // 2^27 longs per chunk, 1GB
+    private static final int CHUNK_SHIFT = 27;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private final FileChannel fChannel;
+    private final MappedByteBuffer[] fChunks;
+    private final long fSize;
+
+    private MappedSegmentTree(FileChannel channel, long size) throws IOException {
+        fChannel = channel;
+        fSize = size;
+
+        long nodes = 2 * size;
+        int chunks = (int) ((nodes + CHUNK_MASK) >>> CHUNK_SHIFT);
+        fChunks = new MappedByteBuffer[chunks];
+        for (int i = 0; i < chunks; i++) {
+            long first = (long) i << CHUNK_SHIFT;
+            long count = Math.min(nodes - first, 1L << CHUNK_SHIFT);
+            fChunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + first * 8, count * 8);
+        }
+    }
+
+    /**
+     * Writes a new tree file for arr, replacing anything already at path
+     */
+    static MappedSegmentTree create(Path path, long[] arr) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(arr.length).flip();
+            channel.write(header, 0);
+
+            MappedSegmentTree tree = new MappedSegmentTree(channel, arr.length);
+            tree.buildTree(arr);
+            tree.force();
+            return tree;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps a tree file written by {@link #create(Path, long[])}
+     */
+    static MappedSegmentTree open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC)
+                throw new IOException(path + " is not a segment tree file");
+            int version = header.getInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("Unsupported segment tree file version " + version);
+
+            // compared by division so a corrupt count cannot overflow the expected file length
+            long size = header.getLong();
+            if (size < 0)
+                throw new IOException(path + " has a negative element count " + size);
+            if (size > (channel.size() - HEADER_BYTES) / 16)
+                throw new IOException(path + " is truncated, it cannot hold " + size + " elements");
+            return new MappedSegmentTree(channel, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void buildTree(long[] arr) {
+        for (int i = 0; i < arr.length; i++)
+            set(fSize + i, arr[i]);
+        for (long i = fSize - 1; i > 0; i--)
+            set(i, get(2 * i) + get(2 * i + 1));
+    }
+
+    /**
+     * @param start start of the range inclusive
+     * @param end   end of the range inclusive
+     */
+    long sum(long start, long end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+
+        long ret = 0;
+        for (long low = start + fSize, high = end + fSize + 1; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret += get(low++);
+            if ((high & 1) == 1)
+                ret += get(--high);
+        }
+        return ret;
+    }
+
+    void update(long index, long val) {
+        if (index < 0 || index >= fSize)
+            return;
+
+        long i = index + fSize;
+        set(i, val);
+        for (i >>= 1; i > 0; i >>= 1)
+            set(i, get(2 * i) + get(2 * i + 1));
+    }
+
+    /**
+     * Flushes every change made so far to the file
+     */
+    void force() {
+        for (MappedByteBuffer chunk : fChunks)
+            chunk.force();
+    }
+
+    long size() {
+        return fSize;
+    }
+
+    /**
+     * Checkpoints and closes the file. The mapping itself is released once the tree is garbage collected
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        fChannel.close();
+    }
+
+    private long get(long node) {
+        return fChunks[(int) (node >>> CHUNK_SHIFT)].getLong((int) (node & CHUNK_MASK) << 3);
+    }
+
+    private void set(long node, long val) {
+        fChunks[(int) (node >>> CHUNK_SHIFT)].putLong((int) (node & CHUNK_MASK) << 3, val);
+    }
+}
+
+
+class MappedSegmentTreeTest {
+
+    @Test
+    void testSumAndUpdate() throws IOException {
+        Path path = Files.createTempFile("segment-tree", ".bin");
+        try (MappedSegmentTree sg = MappedSegmentTree.create(path, new long[]{1, 2, 3, 4, 5, 6})) {
+            assertEquals(3, sg.sum(0, 1));
+            assertEquals(14, sg.sum(1, 4));
+            assertEquals(21, sg.sum(-1, 10));
+
+            sg.update(0, 2);
+            assertEquals(4, sg.sum(0, 1));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void testReopenKeepsUpdates() throws IOException {
+        Path path = Files.createTempFile("segment-tree", ".bin");
+        try {
+            long[] input = generateInput(1000, 1000);
+            try (MappedSegmentTree sg = MappedSegmentTree.create(path, input)) {
+                sg.update(500, 1000000);
+                input[500] = 1000000;
+            }
+
+            try (MappedSegmentTree sg = MappedSegmentTree.open(path)) {
+                assertEquals(input.length, sg.size());
+                long expected = 0;
+                for (int i = 0; i < input.length; i++) {
+                    expected += input[i];
+                    assertEquals(expected, sg.sum(0, i));
+                }
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void testOpenRejectsOtherFiles() throws IOException {
+        Path path = Files.createTempFile("segment-tree", ".bin");
+        try {
+            Files.write(path, new byte[]{1, 2, 3});
+            assertThrows(IOException.class, () -> MappedSegmentTree.open(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void testOpenRejectsBadElementCounts() throws IOException {
+        Path path = Files.createTempFile("segment-tree", ".bin");
+        try {
+            MappedSegmentTree.create(path, generateInput(100, 1000)).close();
+            for (long size : new long[]{-1, Long.MIN_VALUE, 101, Long.MAX_VALUE / 8, Long.MAX_VALUE}) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    ByteBuffer count = ByteBuffer.allocate(8);
+                    count.putLong(size).flip();
+                    channel.write(count, 8);
+                }
+                assertThrows(IOException.class, () -> MappedSegmentTree.open(path));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void testRandomAgainstBruteForce() throws IOException {
+        Path path = Files.createTempFile("segment-tree", ".bin");
+        Random rand = new Random();
+        long[] input = generateInput(777, 1000);
+        try (MappedSegmentTree sg = MappedSegmentTree.create(path, input)) {
+            for (int trial = 0; trial < 5000; trial++) {
+                int start = rand.nextInt(input.length);
+                int end = start + rand.nextInt(input.length - start);
+                if (rand.nextBoolean()) {
+                    input[start] = rand.nextInt(1000);
+                    sg.update(start, input[start]);
+                } else {
+                    long expected = 0;
+                    for (int i = start; i <= end; i++)
+                        expected += input[i];
+                    assertEquals(expected, sg.sum(start, end));
+                }
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void testStartupRuntimeComparison() throws IOException {
+        Path path = Files.createTempFile("segment-tree", ".bin");
+        try {
+            long[] input = generateInput(10000000, 1000);
+            MappedSegmentTree.create(path, input).close();
+
+            int[] intInput = new int[input.length];
+            for (int i = 0; i < input.length; i++)
+                intInput[i] = (int) input[i];
+
+            measureRuntime(() -> new SegmentTree(intInput),
+                    "Duration for building a 10M segment tree %s nanoseconds");
+
+            long startTime = System.nanoTime();
+            try (MappedSegmentTree sg = MappedSegmentTree.open(path)) {
+                long endTime = System.nanoTime();
+                System.out.println(String.format("Duration for opening a 10M mapped segment tree %s nanoseconds", (endTime - startTime)));
+                assertEquals(input[42], sg.sum(42, 42));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private long[] generateInput(int size, int maxVal) {
+        Random rand = new Random();
+        long[] input = new long[size];
+        for (int j = 0; j < size; j++) {
+            input[j] = rand.nextInt(maxVal);
+        }
+        return input;
+    }
+
+    private void measureRuntime(Runnable r, String msg) {
+        long startTime = System.nanoTime();
+        r.run();
+        long endTime = System.nanoTime();
+        System.out.println(String.format(msg, (endTime - startTime)));
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * Associative combine with an identity, e.g. (+, 0), (min, MAX_VALUE) or (gcd, 0)
+ */
+interface Monoid<T> {
+    T identity();
+
+    T combine(T one, T two);
+}
@@ -0,0 +1,154 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Segment tree over any monoid, laid out bottom-up like SegmentTree. Values are boxed,
+ * use LongSegmentTree, DoubleSegmentTree or IntSegmentTree for sum, min and max.
+ */
+class MonoidSegmentTree<T> {
+
+    private final int fSize;
+    private final Monoid<T> fMonoid;
+    private final Object[] fTree;
+
+    MonoidSegmentTree(T[] arr, Monoid<T> monoid) {
+        fSize = arr.length;
+        fMonoid = monoid;
+        fTree = new Object[2 * fSize];
+
+        System.arraycopy(arr, 0, fTree, fSize, fSize);
+        for (int i = fSize - 1; i > 0; i--)
+            fTree[i] = monoid.combine(get(2 * i), get(2 * i + 1));
+    }
+
+    /**
+     * Combines the range in order from left to right, so the monoid does not have to be commutative
+     *
+     * @param start start of the range inclusive
+     * @param end   end of the range inclusive
+     */
+    T query(int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+
+        T left = fMonoid.identity();
+        T right = fMonoid.identity();
+        for (int low = start + fSize, high = end + fSize + 1; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                left = fMonoid.combine(left, get(low++));
+            if ((high & 1) == 1)
+                right = fMonoid.combine(get(--high), right);
+        }
+        return fMonoid.combine(left, right);
+    }
+
+    void update(int index, T val) {
+        if (index < 0 || index >= fSize)
+            return;
+
+        int i = index + fSize;
+        fTree[i] = val;
+        for (i >>= 1; i > 0; i >>= 1)
+            fTree[i] = fMonoid.combine(get(2 * i), get(2 * i + 1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private T get(int node) {
+        return (T) fTree[node];
+    }
+
+    int size() {
+        return fSize;
+    }
+}
+
+
+class MonoidSegmentTreeTest {
+
+    private static final Monoid<Integer> GCD = new Monoid<Integer>() {
+        @Override
+        public Integer identity() {
+            return 0;
+        }
+
+        @Override
+        public Integer combine(Integer one, Integer two) {
+            int a = one;
+            int b = two;
+            while (b != 0) {
+                int tmp = a % b;
+                a = b;
+                b = tmp;
+            }
+            return a;
+        }
+    };
+
+    // string concatenation is not commutative so it catches combines done out of order
+    private static final Monoid<String> CONCAT = new Monoid<String>() {
+        @Override
+        public String identity() {
+            return "";
+        }
+
+        @Override
+        public String combine(String one, String two) {
+            return one + two;
+        }
+    };
+
+    @Test
+    void testGcd() {
+        Integer[] input = new Integer[]{12, 18, 24, 36, 7, 14};
+        MonoidSegmentTree<Integer> sg = new MonoidSegmentTree<>(input, GCD);
+
+        assertEquals(6, (int) sg.query(0, 3));
+        assertEquals(1, (int) sg.query(0, 5));
+        assertEquals(7, (int) sg.query(4, 5));
+
+        sg.update(4, 6);
+        assertEquals(2, (int) sg.query(0, 5));
+    }
+
+    @Test
+    void testQueryKeepsOrder() {
+        String[] input = new String[]{"a", "b", "c", "d", "e", "f", "g"};
+        MonoidSegmentTree<String> sg = new MonoidSegmentTree<>(input, CONCAT);
+
+        assertEquals("abcdefg", sg.query(0, 6));
+        assertEquals("bcde", sg.query(1, 4));
+        assertEquals("", sg.query(4, 2));
+
+        sg.update(3, "x");
+        assertEquals("cxef", sg.query(2, 5));
+    }
+
+    @Test
+    void testRandomAgainstBruteForce() {
+        Random rand = new Random();
+        Integer[] input = new Integer[500];
+        for (int i = 0; i < input.length; i++)
+            input[i] = rand.nextInt(100) * 6;
+        MonoidSegmentTree<Integer> sg = new MonoidSegmentTree<>(input, GCD);
+
+        for (int trial = 0; trial < 5000; trial++) {
+            int start = rand.nextInt(input.length);
+            int end = start + rand.nextInt(input.length - start);
+            if (rand.nextBoolean()) {
+                input[start] = rand.nextInt(100) * 6;
+                sg.update(start, input[start]);
+            } else {
+                int expected = 0;
+                for (int i = start; i <= end; i++)
+                    expected = GCD.combine(expected, input[i]);
+                assertEquals(expected, (int) sg.query(start, end));
+                assertTrue(expected % 6 == 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Immutable ThreadedBinaryTree packed into an int[] in Eytzinger order. The tree is the complete binary tree
+ * with the root in slot 1 and the children of slot k in slots 2k and 2k + 1, filled so that an in-order walk
+ * visits the contents in the order given. No node objects, pointers or thread flags are stored, the threads
+ * follow from the slot index instead: a slot without a right child continues at the ancestor reached by
+ * climbing past every right-child step, which is the slot shifted right by its trailing ones plus one.
+ * <p>
+ * The top levels of the tree share cache lines, so a search touches few lines and its loop has no branch on
+ * the comparison. contains needs the contents to be sorted.
+ */
+class PackedThreadedBinaryTree {
+    private static final int NONE = 0;
+
+    // slot 0 is unused so that the children of k are 2k and 2k + 1
+    final int[] fVals;
+    private final int fSize;
+
+    PackedThreadedBinaryTree(int[] contents) {
+        fSize = contents.length;
+        fVals = new int[fSize + 1];
+        construct(contents, 0, 1);
+    }
+
+    /**
+     * Fills the subtree at slot in order from contents starting at next
+     *
+     * @return index of the first element not used
+     */
+    private int construct(int[] contents, int next, int slot) {
+        if (slot > fSize)
+            return next;
+        next = construct(contents, next, 2 * slot);
+        fVals[slot] = contents[next++];
+        return construct(contents, next, 2 * slot + 1);
+    }
+
+    boolean contains(int val) {
+        int slot = lowerBound(val);
+        return slot != NONE && fVals[slot] == val;
+    }
+
+    /**
+     * @return slot of the first value that is at least val, or NONE
+     */
+    private int lowerBound(int val) {
+        int slot = 1;
+        while (slot <= fSize)
+            slot = 2 * slot + (fVals[slot] < val ? 1 : 0);
+        // the walk went right past every smaller value, undo those steps and the final left one
+        return slot >>> (Integer.numberOfTrailingZeros(~slot) + 1);
+    }
+
+    private int first() {
+        if (fSize == 0)
+            return NONE;
+        return 1 << (31 - Integer.numberOfLeadingZeros(fSize));
+    }
+
+    /**
+     * In-order successor of slot, the implicit version of ThreadedBinaryTree.next
+     */
+    private int next(int slot) {
+        if (2 * slot + 1 <= fSize) {
+            slot = 2 * slot + 1;
+            while (2 * slot <= fSize)
+                slot *= 2;
+            return slot;
+        }
+        return slot >>> (Integer.numberOfTrailingZeros(~slot) + 1);
+    }
+
+    /**
+     * Hands every value to action in order
+     */
+    void forEach(IntConsumer action) {
+        for (int slot = first(); slot != NONE; slot = next(slot))
+            action.accept(fVals[slot]);
+    }
+
+    List<Integer> inorder() {
+        List<Integer> ret = new ArrayList<>(fSize);
+        forEach(ret::add);
+        return ret;
+    }
+
+    int size() {
+        return fSize;
+    }
+}
+
+
+class PackedThreadedBinaryTreeTest {
+
+    @Test
+    void testLayout() {
+        int[] input = new int[]{1, 2, 3, 4, 5, 6, 7};
+        PackedThreadedBinaryTree tb = new PackedThreadedBinaryTree(input);
+
+        assertArrayEquals(new int[]{0, 4, 2, 6, 1, 3, 5, 7}, tb.fVals);
+    }
+
+    @Test
+    void testInOrder() {
+        for (int size = 0; size < 100; size++) {
+            int[] input = generateInput(size, 1000);
+            PackedThreadedBinaryTree tb = new PackedThreadedBinaryTree(input);
+
+            List<Integer> expected = new ArrayList<>();
+            for (int val : input)
+                expected.add(val);
+            assertEquals(expected, tb.inorder());
+        }
+    }
+
+    @Test
+    void testContains() {
+        Random rand = new Random();
+        for (int size = 0; size < 200; size++) {
+            int[] input = generateInput(size, 500);
+            Arrays.sort(input);
+            PackedThreadedBinaryTree tb = new PackedThreadedBinaryTree(input);
+
+            for (int trial = 0; trial < 100; trial++) {
+                int val = rand.nextInt(510) - 5;
+                assertEquals(Arrays.binarySearch(input, val) >= 0, tb.contains(val));
+            }
+        }
+    }
+
+    @Test
+    void testRuntimeComparison() {
+        final int size = 10000000;
+        final int queries = 1000000;
+        int[] input = generateInput(size, Integer.MAX_VALUE);
+        Arrays.sort(input);
+
+        ThreadedBinaryTree pointers = new ThreadedBinaryTree(input);
+        PackedThreadedBinaryTree packed = new PackedThreadedBinaryTree(input);
+
+        Random rand = new Random();
+        int[] queryVals = new int[queries];
+        for (int i = 0; i < queries; i++)
+            queryVals[i] = rand.nextBoolean() ? input[rand.nextInt(size)] : rand.nextInt(Integer.MAX_VALUE);
+
+        int[] found = new int[2];
+        for (int round = 0; round < 2; round++) {
+            measureRuntime(() -> {
+                for (int val : queryVals) {
+                    if (pointers.contains(val))
+                        found[0]++;
+                }
+            }, "Duration for 1M searches on a 10M threaded binary tree %s nanoseconds");
+
+            measureRuntime(() -> {
+                for (int val : queryVals) {
+                    if (packed.contains(val))
+                        found[1]++;
+                }
+            }, "Duration for 1M searches on a 10M packed threaded binary tree %s nanoseconds");
+        }
+        assertEquals(found[0], found[1]);
+
+        long[] sums = new long[2];
+        for (int round = 0; round < 2; round++) {
+            measureRuntime(() -> {
+                PrimitiveIterator.OfInt it = pointers.iterator();
+                while (it.hasNext())
+                    sums[0] += it.nextInt();
+            }, "Duration for walking a 10M threaded binary tree in order %s nanoseconds");
+
+            measureRuntime(() -> packed.forEach(val -> sums[1] += val),
+                    "Duration for walking a 10M packed threaded binary tree in order %s nanoseconds");
+        }
+        assertEquals(sums[0], sums[1]);
+    }
+
+    private int[] generateInput(int size, int maxVal) {
+        Random rand = new Random();
+        int[] input = new int[size];
+        for (int j = 0; j < size; j++) {
+            input[j] = rand.nextInt(maxVal);
+        }
+        return input;
+    }
+
+    private void measureRuntime(Runnable r, String msg) {
+        long startTime = System.nanoTime();
+        r.run();
+        long endTime = System.nanoTime();
+        System.out.println(String.format(msg, (endTime - startTime)));
+    }
+}
@@ -0,0 +1,284 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Immutable heap node, shared between every version of the heap that contains it
+ */
+class PersistentHeapNode {
+    final int fVal;
+    final int sHeight;
+
+    final PersistentHeapNode fLeft;
+    final PersistentHeapNode fRight;
+
+    PersistentHeapNode(int val, PersistentHeapNode left, PersistentHeapNode right) {
+        int leftSHeight = left == null ? 0 : left.sHeight;
+        int rightSHeight = right == null ? 0 : right.sHeight;
+
+        fVal = val;
+        // keep the child with the larger sHeight on the left, like HeightBiasedLeftistTree
+        if (rightSHeight > leftSHeight) {
+            fLeft = right;
+            fRight = left;
+        } else {
+            fLeft = left;
+            fRight = right;
+        }
+        sHeight = Math.min(leftSHeight, rightSHeight) + 1;
+    }
+}
+
+/**
+ * Persistent min heap, insert, pop and meld leave this heap untouched and return a new version
+ * that shares all but the nodes on the merge path with the old one. Taking a snapshot is just
+ * keeping a reference, and since nodes are immutable a snapshot can be read from any thread.
+ * <p>
+ * Nodes are balanced by sHeight rather than by skew heap child swapping, skew heaps only promise
+ * amortized O(log n) merge paths which does not hold once an old version can be melded again,
+ * the leftist rule keeps every right spine at O(log n) for every version.
+ */
+class PersistentHeap {
+    static final PersistentHeap EMPTY = new PersistentHeap(null, 0);
+
+    private final PersistentHeapNode fHead;
+    private final int fSize;
+
+    private PersistentHeap(PersistentHeapNode head, int size) {
+        fHead = head;
+        fSize = size;
+    }
+
+    /**
+     * Builds a heap by melding single nodes pairwise, O(n)
+     */
+    static PersistentHeap of(int... arr) {
+        int n = arr.length;
+        if (n == 0)
+            return EMPTY;
+
+        PersistentHeapNode[] roots = new PersistentHeapNode[n];
+        for (int i = 0; i < n; i++)
+            roots[i] = new PersistentHeapNode(arr[i], null, null);
+
+        while (n > 1) {
+            int half = 0;
+            for (int i = 0; i + 1 < n; i += 2)
+                roots[half++] = meld(roots[i], roots[i + 1]);
+            if ((n & 1) == 1)
+                roots[half++] = roots[n - 1];
+            n = half;
+        }
+        return new PersistentHeap(roots[0], arr.length);
+    }
+
+    PersistentHeap insert(int val) {
+        return new PersistentHeap(meld(fHead, new PersistentHeapNode(val, null, null)), fSize + 1);
+    }
+
+    int min() {
+        if (fHead == null)
+            throw new NoSuchElementException("No elements in the heap!");
+        return fHead.fVal;
+    }
+
+    /**
+     * @return this heap without its minimum
+     */
+    PersistentHeap pop() {
+        if (fHead == null)
+            throw new NoSuchElementException("No elements in the heap!");
+        return new PersistentHeap(meld(fHead.fLeft, fHead.fRight), fSize - 1);
+    }
+
+    PersistentHeap meld(PersistentHeap other) {
+        if (other.fHead == null)
+            return this;
+        if (fHead == null)
+            return other;
+        return new PersistentHeap(meld(fHead, other.fHead), fSize + other.fSize);
+    }
+
+    /**
+     * Copies the nodes on the right spines of both heaps, recursion depth is bounded by the sum of the
+     * two sHeights which is O(log n)
+     */
+    private static PersistentHeapNode meld(PersistentHeapNode one, PersistentHeapNode two) {
+        if (one == null)
+            return two;
+        if (two == null)
+            return one;
+
+        if (one.fVal > two.fVal) {
+            PersistentHeapNode tmp = one;
+            one = two;
+            two = tmp;
+        }
+        return new PersistentHeapNode(one.fVal, one.fLeft, meld(one.fRight, two));
+    }
+
+    PersistentHeapNode head() {
+        return fHead;
+    }
+
+    int size() {
+        return fSize;
+    }
+
+    boolean isEmpty() {
+        return fSize <= 0;
+    }
+}
+
+
+class PersistentHeapTest {
+
+    @Test
+    void testSimpleConstruction() {
+        PersistentHeap heap = PersistentHeap.of(3, 4, 5, 6, 2);
+        assertEquals(2, heap.min());
+        assertEquals(5, heap.size());
+    }
+
+    @Test
+    void testPopForHeapSort() {
+        PersistentHeap heap = PersistentHeap.of(1, 2, 5, 10, 3);
+
+        int[] expected = new int[]{1, 2, 3, 5, 10};
+        for (int i : expected) {
+            assertEquals(i, heap.min());
+            heap = heap.pop();
+        }
+        assertTrue(heap.isEmpty());
+        Assertions.assertThrows(NoSuchElementException.class, heap::pop);
+    }
+
+    @Test
+    void testOldVersionsAreUnchanged() {
+        PersistentHeap original = PersistentHeap.of(5, 3, 8);
+        PersistentHeap inserted = original.insert(1);
+        PersistentHeap popped = original.pop();
+        PersistentHeap melded = original.meld(PersistentHeap.of(0, 9));
+
+        assertEquals(3, original.min());
+        assertEquals(3, original.size());
+
+        assertEquals(1, inserted.min());
+        assertEquals(4, inserted.size());
+
+        assertEquals(5, popped.min());
+        assertEquals(2, popped.size());
+
+        assertEquals(0, melded.min());
+        assertEquals(5, melded.size());
+    }
+
+    @Test
+    void testInsertCopiesOnlyThePath() {
+        PersistentHeap heap = PersistentHeap.of(generateInput(1000, 100000));
+        PersistentHeap inserted = heap.insert(Integer.MAX_VALUE);
+
+        // the largest value ends up at the bottom of the right spine so the old left subtree is shared
+        PersistentHeapNode shared = heap.head().fLeft;
+        assertTrue(inserted.head().fLeft == shared || inserted.head().fRight == shared);
+        assertNotSame(heap.head(), inserted.head());
+    }
+
+    @Test
+    void testMatchesPriorityQueue() {
+        int[] input = generateInput(100000, 100000);
+        PersistentHeap heap = PersistentHeap.EMPTY;
+        PriorityQueue<Integer> pq = new PriorityQueue<>();
+
+        Random rand = new Random();
+        for (int i : input) {
+            heap = heap.insert(i);
+            pq.add(i);
+            if (rand.nextInt(3) == 0) {
+                assertEquals((int) pq.poll(), heap.min());
+                heap = heap.pop();
+            }
+        }
+
+        assertEquals(pq.size(), heap.size());
+        while (!pq.isEmpty()) {
+            assertEquals((int) pq.poll(), heap.min());
+            heap = heap.pop();
+        }
+    }
+
+    @Test
+    void testSnapshotsReadWhileWriting() throws Exception {
+        AtomicReference<PersistentHeap> current = new AtomicReference<>(PersistentHeap.EMPTY);
+        final int writes = 200000;
+        // the i-th value inserted, written before the version holding it is published
+        int[] inserted = new int[writes];
+
+        Thread writer = new Thread(() -> {
+            Random rand = new Random();
+            for (int i = 0; i < writes; i++) {
+                inserted[i] = rand.nextInt(100000);
+                current.set(current.get().insert(inserted[i]));
+            }
+        });
+        writer.start();
+
+        // readers drain their own snapshot without any locking while the writer keeps publishing versions
+        int snapshots = 0;
+        while (writer.isAlive() || snapshots == 0) {
+            PersistentHeap snapshot = current.get();
+            int[] expected = Arrays.copyOf(inserted, snapshot.size());
+            Arrays.sort(expected);
+
+            int count = 0;
+            for (PersistentHeap heap = snapshot; !heap.isEmpty(); heap = heap.pop())
+                assertEquals(expected[count++], heap.min());
+            assertEquals(expected.length, count);
+            snapshots++;
+        }
+        writer.join();
+        assertEquals(writes, current.get().size());
+    }
+
+    @Test
+    void testSnapshotRuntimeComparison() {
+        int[] input = generateInput(1000000, 100000);
+        PersistentHeap heap = PersistentHeap.of(input);
+        SkewHeap skewHeap = new SkewHeap(input);
+
+        PersistentHeap[] inserted = new PersistentHeap[1];
+        measureRuntime(() -> inserted[0] = heap.insert(1),
+                "Duration for persistent heap snapshot and insert %s nanoseconds");
+        assertEquals(input.length, heap.size());
+        assertEquals(input.length + 1, inserted[0].size());
+
+        // a skew heap has to be rebuilt to keep a copy that the insert does not change
+        SkewHeap[] copy = new SkewHeap[1];
+        measureRuntime(() -> {
+            copy[0] = new SkewHeap(input);
+            skewHeap.insert(1);
+        }, "Duration for Skew Heap rebuild and insert %s nanoseconds");
+        assertEquals(input.length, copy[0].size());
+        assertEquals(input.length + 1, skewHeap.size());
+    }
+
+    private int[] generateInput(int size, int maxVal) {
+        Random rand = new Random();
+        int[] input = new int[size];
+        for (int j = 0; j < size; j++) {
+            input[j] = rand.nextInt(maxVal);
+        }
+        return input;
+    }
+
+    private void measureRuntime(Runnable r, String msg) {
+        long startTime = System.nanoTime();
+        r.run();
+        long endTime = System.nanoTime();
+        System.out.println(String.format(msg, (endTime - startTime)));
+    }
+}
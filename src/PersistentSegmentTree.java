@@ -0,0 +1,480 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Sum segment tree that keeps every version. An update copies the O(log n) nodes on the path to its
+ * leaf and shares the rest with the version it was made from, then returns the id of the new version.
+ * <p>
+ * Nodes are int indices into flat arrays, like PooledSkewHeap. Every node counts how many parents
+ * and versions point at it, releasing a version frees whatever nodes only it was using and those
+ * slots are reused by later updates.
+ * <p>
+ * Like SegmentTree, ranges are clamped to the tree and an update outside it changes nothing, though it
+ * still returns a new version holding the same contents.
+ */
+class PersistentSegmentTree {
+    private static final int NIL = -1;
+
+    private final int fSize;
+
+    private int[] fLefts;
+    private int[] fRights;
+    private long[] fSums;
+    private int[] fRefs;
+
+    // head of the free list, chained through fLefts
+    private int fFree = NIL;
+    private int fNext;
+    private int fLive;
+
+    // root of version fBase + i in fRoots[i], NIL once released. Every version before fOldest has been
+    // released, and their slots are dropped when fRoots fills up
+    private int[] fRoots;
+    private int fBase;
+    private int fOldest;
+    private int fVersions;
+    // newest version still held, or NIL
+    private int fLatest = NIL;
+
+    PersistentSegmentTree(int[] arr) {
+        fSize = arr.length;
+        int capacity = Math.max(2 * fSize, 1);
+        fLefts = new int[capacity];
+        fRights = new int[capacity];
+        fSums = new long[capacity];
+        fRefs = new int[capacity];
+        fRoots = new int[16];
+
+        // an empty tree still needs a root for its versions to point at, a leaf that no sum reaches
+        addVersion(fSize == 0 ? newLeaf(0) : buildTree(arr, 0, fSize - 1));
+    }
+
+    /**
+     * Builds version 0 over [low, high] inclusive
+     */
+    private int buildTree(int[] arr, int low, int high) {
+        if (low == high)
+            return newLeaf(arr[low]);
+
+        int mid = low + (high - low) / 2;
+        int left = buildTree(arr, low, mid);
+        int right = buildTree(arr, mid + 1, high);
+        return newInternal(left, right);
+    }
+
+    /**
+     * Sets index to val in a copy of the latest version
+     *
+     * @return id of the new version
+     */
+    int update(int index, int val) {
+        return update(latestVersion(), index, val);
+    }
+
+    /**
+     * Sets index to val in a copy of the given version, the given version stays as it was.
+     * An index outside the tree leaves the copy unchanged, so it shares the given version's root
+     *
+     * @return id of the new version
+     */
+    int update(int version, int index, int val) {
+        int root = root(version);
+        if (index < 0 || index >= fSize)
+            return addVersion(root);
+        return addVersion(update(root, 0, fSize - 1, index, val));
+    }
+
+    private int update(int node, int low, int high, int index, int val) {
+        if (low == high)
+            return newLeaf(val);
+
+        int mid = low + (high - low) / 2;
+        int left = fLefts[node];
+        int right = fRights[node];
+        if (index <= mid)
+            left = update(left, low, mid, index, val);
+        else right = update(right, mid + 1, high, index, val);
+        return newInternal(left, right);
+    }
+
+    /**
+     * Sums over the given range as of version, any part of the range outside the tree is ignored
+     *
+     * @param start start of the range inclusive
+     * @param end   end of the range inclusive
+     */
+    long sum(int version, int start, int end) {
+        int root = root(version);
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+        if (start > end)
+            return 0;
+        return sum(root, 0, fSize - 1, start, end);
+    }
+
+    long sum(int start, int end) {
+        return sum(latestVersion(), start, end);
+    }
+
+    private long sum(int node, int low, int high, int start, int end) {
+        if (start <= low && high <= end)
+            return fSums[node];
+
+        int mid = low + (high - low) / 2;
+        long ret = 0;
+        if (start <= mid)
+            ret += sum(fLefts[node], low, mid, start, end);
+        if (end > mid)
+            ret += sum(fRights[node], mid + 1, high, start, end);
+        return ret;
+    }
+
+    /**
+     * Drops a version, nodes that no other version uses are freed
+     */
+    void release(int version) {
+        int root = root(version);
+        fRoots[version - fBase] = NIL;
+        decRef(root);
+
+        while (fOldest < fVersions && fRoots[fOldest - fBase] == NIL)
+            fOldest++;
+        if (version == fLatest) {
+            fLatest = NIL;
+            for (int i = version - 1; i >= fOldest; i--) {
+                if (fRoots[i - fBase] != NIL) {
+                    fLatest = i;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every version older than the given one that is still held
+     */
+    void releaseBefore(int version) {
+        for (int i = fOldest; i < Math.min(version, fVersions); i++) {
+            if (fRoots[i - fBase] != NIL)
+                release(i);
+        }
+    }
+
+    /**
+     * @return id of the newest version that has not been released
+     */
+    int latestVersion() {
+        if (fLatest == NIL)
+            throw new IllegalStateException("Every version has been released");
+        return fLatest;
+    }
+
+    int liveNodes() {
+        return fLive;
+    }
+
+    int size() {
+        return fSize;
+    }
+
+    private int root(int version) {
+        if (version < fOldest || version >= fVersions || fRoots[version - fBase] == NIL)
+            throw new IllegalArgumentException("No version " + version);
+        return fRoots[version - fBase];
+    }
+
+    private int addVersion(int root) {
+        if (fVersions - fBase == fRoots.length) {
+            // slide the held versions down when that frees at least half of fRoots, otherwise grow
+            int held = fVersions - fOldest;
+            int[] roots = held <= fRoots.length / 2 ? fRoots : new int[2 * fRoots.length];
+            System.arraycopy(fRoots, fOldest - fBase, roots, 0, held);
+            fRoots = roots;
+            fBase = fOldest;
+        }
+        fRefs[root]++;
+        fRoots[fVersions - fBase] = root;
+        fLatest = fVersions;
+        return fVersions++;
+    }
+
+    private int newLeaf(long val) {
+        int node = alloc();
+        fLefts[node] = NIL;
+        fRights[node] = NIL;
+        fSums[node] = val;
+        return node;
+    }
+
+    private int newInternal(int left, int right) {
+        int node = alloc();
+        fLefts[node] = left;
+        fRights[node] = right;
+        fSums[node] = fSums[left] + fSums[right];
+        fRefs[left]++;
+        fRefs[right]++;
+        return node;
+    }
+
+    private int alloc() {
+        int node;
+        if (fFree != NIL) {
+            node = fFree;
+            fFree = fLefts[node];
+        } else {
+            if (fNext == fSums.length)
+                grow();
+            node = fNext++;
+        }
+        fRefs[node] = 0;
+        fLive++;
+        return node;
+    }
+
+    private void grow() {
+        int capacity = 2 * fSums.length;
+        fLefts = Arrays.copyOf(fLefts, capacity);
+        fRights = Arrays.copyOf(fRights, capacity);
+        fSums = Arrays.copyOf(fSums, capacity);
+        fRefs = Arrays.copyOf(fRefs, capacity);
+    }
+
+    /**
+     * Drops one reference to node, freeing it and dropping its own references if it was the last one.
+     * Uses an explicit stack since one release can free a whole tree
+     */
+    private void decRef(int node) {
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = node;
+
+        while (top > 0) {
+            int cur = stack[--top];
+            if (--fRefs[cur] > 0)
+                continue;
+
+            if (fLefts[cur] != NIL) {
+                if (top + 2 > stack.length)
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                stack[top++] = fLefts[cur];
+                stack[top++] = fRights[cur];
+            }
+
+            fLefts[cur] = fFree;
+            fFree = cur;
+            fLive--;
+        }
+    }
+}
+
+
+class PersistentSegmentTreeTest {
+
+    @Test
+    void testSum() {
+        int[] input = new int[]{1, 2, 3, 4, 5, 6};
+        PersistentSegmentTree sg = new PersistentSegmentTree(input);
+
+        assertEquals(3, sg.sum(0, 1));
+        assertEquals(14, sg.sum(1, 4));
+        assertEquals(21, sg.sum(0, 5));
+        assertEquals(5, sg.sum(4, 4));
+        assertEquals(21, sg.sum(-2, 9));
+    }
+
+    @Test
+    void testEmptyTree() {
+        PersistentSegmentTree sg = new PersistentSegmentTree(new int[0]);
+        assertEquals(0, sg.size());
+        assertEquals(0, sg.sum(0, 0));
+        assertEquals(0, sg.sum(-5, 5));
+
+        int version = sg.update(0, 7);
+        assertEquals(version, sg.latestVersion());
+        assertEquals(0, sg.sum(version, 0, 0));
+
+        sg.release(0);
+        sg.release(version);
+        assertEquals(0, sg.liveNodes());
+    }
+
+    @Test
+    void testUpdateOutsideTheTreeChangesNothing() {
+        int[] input = new int[]{1, 2, 3, 4};
+        PersistentSegmentTree sg = new PersistentSegmentTree(input);
+        int nodes = sg.liveNodes();
+
+        int below = sg.update(-1, 100);
+        int above = sg.update(0, 4, 100);
+        assertEquals(10, sg.sum(below, 0, 3));
+        assertEquals(10, sg.sum(above, 0, 3));
+        assertEquals(nodes, sg.liveNodes());
+
+        // the versions share version 0's nodes, so they stay until every one is released
+        sg.release(0);
+        sg.release(below);
+        assertEquals(nodes, sg.liveNodes());
+        assertEquals(10, sg.sum(0, 3));
+        sg.release(above);
+        assertEquals(0, sg.liveNodes());
+    }
+
+    @Test
+    void testOldVersionsAreKept() {
+        int[] input = new int[]{1, 2, 3, 4, 5, 6, 7};
+        PersistentSegmentTree sg = new PersistentSegmentTree(input);
+
+        int first = sg.update(0, 2);
+        int second = sg.update(6, 0);
+        int branch = sg.update(first, 3, 10);
+
+        assertEquals(28, sg.sum(0, 0, 6));
+        assertEquals(29, sg.sum(first, 0, 6));
+        assertEquals(22, sg.sum(second, 0, 6));
+        assertEquals(35, sg.sum(branch, 0, 6));
+        assertEquals(branch, sg.latestVersion());
+    }
+
+    @Test
+    void testUpdateCopiesOnlyThePath() {
+        int[] input = new int[1 << 10];
+        PersistentSegmentTree sg = new PersistentSegmentTree(input);
+        int before = sg.liveNodes();
+
+        sg.update(17, 1);
+        assertEquals(before + 11, sg.liveNodes());
+    }
+
+    @Test
+    void testReleaseFreesUnsharedNodes() {
+        int[] input = new int[1000];
+        PersistentSegmentTree sg = new PersistentSegmentTree(input);
+        int baseline = sg.liveNodes();
+
+        Random rand = new Random();
+        int version = 0;
+        for (int i = 0; i < 10000; i++)
+            version = sg.update(rand.nextInt(input.length), rand.nextInt(100));
+        assertTrue(sg.liveNodes() > baseline);
+
+        sg.releaseBefore(version);
+        assertEquals(baseline, sg.liveNodes());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> sg.sum(0, 0, 10));
+    }
+
+    @Test
+    void testReleasedNodesAreReused() {
+        int[] input = new int[1000];
+        PersistentSegmentTree sg = new PersistentSegmentTree(input);
+
+        Random rand = new Random();
+        int previous = 0;
+        for (int i = 0; i < 100000; i++) {
+            int version = sg.update(rand.nextInt(input.length), rand.nextInt(100));
+            sg.release(previous);
+            previous = version;
+        }
+        assertEquals(2 * input.length - 1, sg.liveNodes());
+    }
+
+    @Test
+    void testLatestVersionFollowsReleases() {
+        PersistentSegmentTree sg = new PersistentSegmentTree(new int[]{1, 2, 3});
+        int first = sg.update(0, 5);
+        int second = sg.update(1, 5);
+        int third = sg.update(2, 5);
+        assertEquals(third, sg.latestVersion());
+
+        sg.release(second);
+        assertEquals(third, sg.latestVersion());
+        sg.release(third);
+        assertEquals(first, sg.latestVersion());
+        assertEquals(10, sg.sum(0, 2));
+
+        int fourth = sg.update(1, 0);
+        assertEquals(third + 1, fourth);
+        assertEquals(fourth, sg.latestVersion());
+
+        sg.release(0);
+        sg.release(first);
+        assertEquals(fourth, sg.latestVersion());
+        sg.release(fourth);
+        Assertions.assertThrows(IllegalStateException.class, sg::latestVersion);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> sg.sum(first, 0, 2));
+    }
+
+    @Test
+    void testRandomReleasesAgainstBruteForce() {
+        Random rand = new Random();
+        int[] input = new int[50];
+        PersistentSegmentTree sg = new PersistentSegmentTree(input);
+
+        // held versions and their contents, in version order
+        TreeMap<Integer, int[]> held = new TreeMap<>();
+        held.put(0, input.clone());
+        for (int trial = 0; trial < 20000; trial++) {
+            if (held.isEmpty())
+                break;
+            int action = rand.nextInt(4);
+            if (action == 0 && held.size() > 1) {
+                int version = rand.nextBoolean() ? held.firstKey() : held.lastKey();
+                sg.release(version);
+                held.remove(version);
+            } else {
+                int from = rand.nextBoolean() ? held.lastKey() : held.firstKey();
+                int[] next = held.get(from).clone();
+                int index = rand.nextInt(input.length);
+                next[index] = rand.nextInt(1000);
+                held.put(sg.update(from, index, next[index]), next);
+            }
+
+            assertEquals((int) held.lastKey(), sg.latestVersion());
+            int version = rand.nextBoolean() ? held.firstKey() : held.lastKey();
+            long expected = 0;
+            for (int val : held.get(version))
+                expected += val;
+            assertEquals(expected, sg.sum(version, 0, input.length - 1));
+        }
+    }
+
+    @Test
+    void testRandomAgainstBruteForce() {
+        Random rand = new Random();
+        int[] input = new int[300];
+        for (int i = 0; i < input.length; i++)
+            input[i] = rand.nextInt(1000);
+        PersistentSegmentTree sg = new PersistentSegmentTree(input);
+
+        List<int[]> history = new ArrayList<>();
+        history.add(input.clone());
+        for (int trial = 0; trial < 2000; trial++) {
+            int from = rand.nextInt(history.size());
+            int index = rand.nextInt(input.length);
+            int val = rand.nextInt(1000);
+
+            int[] next = history.get(from).clone();
+            next[index] = val;
+            assertEquals(history.size(), sg.update(from, index, val));
+            history.add(next);
+
+            int version = rand.nextInt(history.size());
+            int start = rand.nextInt(input.length);
+            int end = start + rand.nextInt(input.length - start);
+            long expected = 0;
+            for (int i = start; i <= end; i++)
+                expected += history.get(version)[i];
+            assertEquals(expected, sg.sum(version, start, end));
+        }
+    }
+}
@@ -0,0 +1,391 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Flat storage for skew heap nodes, node i lives at fVals[i], fLefts[i] and fRights[i].
+ * Freed nodes are chained together through fLefts so they can be handed out again
+ */
+class SkewHeapPool {
+    static final int NIL = -1;
+
+    int[] fVals;
+    int[] fLefts;
+    int[] fRights;
+
+    // head of the free list
+    private int fFree = NIL;
+    // first slot that has never been handed out
+    private int fNext;
+
+    SkewHeapPool() {
+        this(16);
+    }
+
+    SkewHeapPool(int capacity) {
+        capacity = Math.max(capacity, 1);
+        fVals = new int[capacity];
+        fLefts = new int[capacity];
+        fRights = new int[capacity];
+    }
+
+    int alloc(int val) {
+        int node;
+        if (fFree != NIL) {
+            node = fFree;
+            fFree = fLefts[node];
+        } else {
+            if (fNext == fVals.length)
+                grow();
+            node = fNext++;
+        }
+
+        fVals[node] = val;
+        fLefts[node] = NIL;
+        fRights[node] = NIL;
+        return node;
+    }
+
+    void free(int node) {
+        fLefts[node] = fFree;
+        fRights[node] = NIL;
+        fFree = node;
+    }
+
+    int capacity() {
+        return fVals.length;
+    }
+
+    private void grow() {
+        int capacity = fVals.length * 2;
+        fVals = Arrays.copyOf(fVals, capacity);
+        fLefts = Arrays.copyOf(fLefts, capacity);
+        fRights = Arrays.copyOf(fRights, capacity);
+    }
+}
+
+/**
+ * Skew heap whose nodes are int indices into a {@link SkewHeapPool}.
+ * Heaps sharing a pool meld in place, and once the pool is large enough
+ * insert, pop and meld do not allocate.
+ */
+class PooledSkewHeap {
+    private static final int NIL = SkewHeapPool.NIL;
+
+    private final SkewHeapPool fPool;
+    private int fHead = NIL;
+    private int fSize;
+
+    PooledSkewHeap() {
+        this(new SkewHeapPool());
+    }
+
+    PooledSkewHeap(SkewHeapPool pool) {
+        fPool = pool;
+    }
+
+    PooledSkewHeap(int[] arr) {
+        this(new SkewHeapPool(arr.length), arr);
+    }
+
+    PooledSkewHeap(SkewHeapPool pool, int[] arr) {
+        fPool = pool;
+        build(arr);
+    }
+
+    /**
+     * Adds every element of arr by melding single nodes pairwise, the same way SkewHeap builds
+     */
+    void build(int[] arr) {
+        int n = arr.length;
+        if (n == 0)
+            return;
+
+        int[] roots = new int[n];
+        for (int i = 0; i < n; i++)
+            roots[i] = fPool.alloc(arr[i]);
+
+        while (n > 1) {
+            int half = 0;
+            for (int i = 0; i + 1 < n; i += 2)
+                roots[half++] = meld(roots[i], roots[i + 1]);
+            if ((n & 1) == 1)
+                roots[half++] = roots[n - 1];
+            n = half;
+        }
+
+        fHead = meld(fHead, roots[0]);
+        fSize += arr.length;
+    }
+
+    /**
+     * Melds other into this heap, leaving other empty
+     */
+    void meld(PooledSkewHeap other) {
+        if (other == this)
+            return;
+
+        // nodes cannot be shared across pools so move them over one by one
+        if (other.fPool != fPool) {
+            while (!other.isEmpty())
+                insert(other.pop());
+            return;
+        }
+
+        fHead = meld(fHead, other.fHead);
+        fSize += other.fSize;
+        other.fHead = NIL;
+        other.fSize = 0;
+    }
+
+    void insert(int val) {
+        int node = fPool.alloc(val);
+        fHead = meld(fHead, node);
+        fSize++;
+    }
+
+    int min() {
+        if (fHead == NIL)
+            throw new NoSuchElementException("No elements in the heap!");
+        return fPool.fVals[fHead];
+    }
+
+    int pop() {
+        int ret = min();
+        int old = fHead;
+        fHead = meld(fPool.fLefts[old], fPool.fRights[old]);
+        fPool.free(old);
+        fSize--;
+        return ret;
+    }
+
+    /**
+     * Top-down meld, same as {@link SkewHeap#meld(SkewHeapNode, SkewHeapNode)}
+     */
+    private int meld(int one, int two) {
+        if (two == NIL)
+            return one;
+        if (one == NIL)
+            return two;
+
+        int[] vals = fPool.fVals;
+        int[] lefts = fPool.fLefts;
+        int[] rights = fPool.fRights;
+
+        if (vals[one] > vals[two]) {
+            int tmp = one;
+            one = two;
+            two = tmp;
+        }
+
+        int root = one;
+        int parent = one;
+
+        one = rights[parent];
+        rights[parent] = lefts[parent];
+
+        while (one != NIL && two != NIL) {
+            if (vals[one] > vals[two]) {
+                int tmp = one;
+                one = two;
+                two = tmp;
+            }
+
+            lefts[parent] = one;
+            parent = one;
+
+            one = rights[parent];
+            rights[parent] = lefts[parent];
+        }
+
+        lefts[parent] = one == NIL ? two : one;
+        return root;
+    }
+
+    SkewHeapPool pool() {
+        return fPool;
+    }
+
+    int size() {
+        return fSize;
+    }
+
+    boolean isEmpty() {
+        return fSize <= 0;
+    }
+}
+
+
+class PooledSkewHeapTest {
+
+    @Test
+    void testSimpleConstruction() {
+        int[] input = new int[]{1, 2, 3};
+        PooledSkewHeap heap = new PooledSkewHeap(input);
+        assertEquals(1, heap.min());
+        assertEquals(3, heap.size());
+    }
+
+    @Test
+    void testReverseInput() {
+        int[] input = new int[]{5, 4, 3, 2, 1};
+        PooledSkewHeap heap = new PooledSkewHeap(input);
+        assertEquals(1, heap.min());
+        assertEquals(5, heap.size());
+    }
+
+    @Test
+    void testAddReplaceNewMin() {
+        int[] input = new int[]{1, 2, 5, 10, 3};
+        PooledSkewHeap heap = new PooledSkewHeap(input);
+        heap.insert(-1);
+
+        assertEquals(-1, heap.min());
+        assertEquals(6, heap.size());
+    }
+
+    @Test
+    void testPopForHeapSort() {
+        int[] input = new int[]{1, 2, 5, 10, 3};
+        PooledSkewHeap heap = new PooledSkewHeap(input);
+
+        assertEquals(1, heap.pop());
+        assertEquals(2, heap.pop());
+        assertEquals(3, heap.pop());
+        assertEquals(5, heap.pop());
+        assertEquals(10, heap.pop());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    void testPopExceptionOnNoElements() {
+        PooledSkewHeap heap = new PooledSkewHeap(new int[]{1});
+        heap.pop();
+
+        Assertions.assertThrows(NoSuchElementException.class, heap::pop);
+    }
+
+    @Test
+    void testMeldSharedPool() {
+        SkewHeapPool pool = new SkewHeapPool();
+        PooledSkewHeap heap = new PooledSkewHeap(pool, new int[]{4, 8, 1});
+        PooledSkewHeap heap2 = new PooledSkewHeap(pool, new int[]{3, 7, 2});
+
+        heap.meld(heap2);
+        assertEquals(6, heap.size());
+        assertEquals(0, heap2.size());
+
+        int[] expected = new int[]{1, 2, 3, 4, 7, 8};
+        for (int i : expected)
+            assertEquals(i, heap.pop());
+    }
+
+    @Test
+    void testMeldSeparatePools() {
+        PooledSkewHeap heap = new PooledSkewHeap(new int[]{4, 8, 1});
+        PooledSkewHeap heap2 = new PooledSkewHeap(new int[]{3, 7, 2});
+
+        heap.meld(heap2);
+        assertEquals(6, heap.size());
+        assertTrue(heap2.isEmpty());
+
+        int[] expected = new int[]{1, 2, 3, 4, 7, 8};
+        for (int i : expected)
+            assertEquals(i, heap.pop());
+    }
+
+    @Test
+    void testFreedNodesAreReused() {
+        int[] input = generateInput(1000, 1000);
+        PooledSkewHeap heap = new PooledSkewHeap(input);
+        int capacity = heap.pool().capacity();
+
+        Random rand = new Random();
+        for (int i = 0; i < 100000; i++) {
+            heap.pop();
+            heap.insert(rand.nextInt(1000));
+        }
+
+        assertEquals(capacity, heap.pool().capacity());
+        assertEquals(1000, heap.size());
+    }
+
+    @Test
+    void testMatchesSkewHeap() {
+        int[] firstArr = generateInput(1000000, 100000);
+        int[] secondArr = generateInput(1000000, 100000);
+
+        SkewHeap heap = new SkewHeap(firstArr);
+        heap.meld(new SkewHeap(secondArr));
+
+        SkewHeapPool pool = new SkewHeapPool(firstArr.length + secondArr.length);
+        PooledSkewHeap pooled = new PooledSkewHeap(pool, firstArr);
+        pooled.meld(new PooledSkewHeap(pool, secondArr));
+
+        assertEquals(heap.size(), pooled.size());
+
+        int[] expected = new int[heap.size()];
+        int[] actual = new int[pooled.size()];
+
+        measureRuntime(() -> {
+            for (int i = 0; i < expected.length; i++)
+                expected[i] = heap.pop();
+        }, "Duration for Skew Heap heapsort %s nanoseconds");
+
+        measureRuntime(() -> {
+            for (int i = 0; i < actual.length; i++)
+                actual[i] = pooled.pop();
+        }, "Duration for pooled Skew Heap heapsort %s nanoseconds");
+
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    void testBuildRuntimeComparison() {
+        int[] firstArr = generateInput(1000000, 100000);
+
+        measureRuntime(() -> new SkewHeap(firstArr),
+                "Duration for Skew Heap build %s nanoseconds");
+
+        measureRuntime(() -> new PooledSkewHeap(firstArr),
+                "Duration for pooled Skew Heap build %s nanoseconds");
+    }
+
+    @Test
+    void testSortedInputDoesNotOverflowStack() {
+        final int size = 10000000;
+        SkewHeapPool pool = new SkewHeapPool(2 * size);
+        PooledSkewHeap heap = new PooledSkewHeap(pool);
+        for (int i = 0; i < size; i++)
+            heap.insert(i);
+
+        PooledSkewHeap other = new PooledSkewHeap(pool);
+        for (int i = size; i > 0; i--)
+            other.insert(-i);
+
+        heap.meld(other);
+        assertEquals(2 * size, heap.size());
+
+        for (int i = size; i > size - 1000; i--)
+            assertEquals(-i, heap.pop());
+    }
+
+    private int[] generateInput(int size, int maxVal) {
+        Random rand = new Random();
+        int[] input = new int[size];
+        for (int j = 0; j < size; j++) {
+            input[j] = rand.nextInt(maxVal);
+        }
+        return input;
+    }
+
+    private void measureRuntime(Runnable r, String msg) {
+        long startTime = System.nanoTime();
+        r.run();
+        long endTime = System.nanoTime();
+        System.out.println(String.format(msg, (endTime - startTime)));
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * Range sums with point updates, whichever structure is behind them
+ */
+interface RangeSum {
+    /**
+     * @param start start of the range inclusive
+     * @param end   end of the range inclusive
+     */
+    int sum(int start, int end);
+
+    void update(int index, int val);
+
+    int size();
+
+    static RangeSum create(int[] arr, RangeSumBackend backend) {
+        switch (backend) {
+            case FENWICK:
+                return new FenwickTree(arr);
+            default:
+                return new SegmentTree(arr);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * Structures that can back a RangeSum. SEGMENT_TREE keeps 2n nodes and can be extended with other queries,
+ * FENWICK keeps n + 1 slots and is the cheaper choice when only sums are needed
+ */
+enum RangeSumBackend {
+    SEGMENT_TREE, FENWICK
+}
@@ -1,114 +1,245 @@
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-
-class STNode {
-    int val;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-    // ranges
-    int start;
-    int end;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
-    STNode left;
-    STNode right;
-}
 
+/**
+ * Segment tree stored bottom-up in a flat array. Element i lives at fTree[n + i] and every
+ * internal node i < n holds fTree[2i] + fTree[2i + 1], so the root is fTree[1].
+ */
+class SegmentTree implements RangeSum {
 
-class SegmentTree {
+    // batches at least this large are split across the pool given to sumAll
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
 
-    private int[] fArr;
-    STNode fHead;
+    private final int fSize;
+    int[] fTree;
 
     SegmentTree(int[] arr) {
-        fArr = arr;
-        buildTree();
+        fSize = arr.length;
+        fTree = new int[2 * fSize];
+        buildTree(arr);
     }
 
-    private void buildTree() {
-        if (fArr != null && fArr.length > 0)
-            fHead = buildTree(0, fArr.length - 1);
+    private void buildTree(int[] arr) {
+        System.arraycopy(arr, 0, fTree, fSize, fSize);
+        for (int i = fSize - 1; i > 0; i--)
+            fTree[i] = fTree[2 * i] + fTree[2 * i + 1];
     }
 
     /**
-     * Builds a Segment Tree
+     * Sums over the given range, walking up from both ends at once. Any part of the range outside the tree is ignored
      *
-     * @param low  start of range inclusive
-     * @param high end of range inclusive
-     * @return fHead of the tree
+     * @param start start of the range inclusive
+     * @param end   end of the range inclusive
+     * @return the sum
      */
-    private STNode buildTree(int low, int high) {
-        if (low >= high) {
-            STNode node = new STNode();
-            node.val = fArr[low];
-            node.start = low;
-            node.end = high;
-            return node;
+    @Override
+    public int sum(int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+
+        int ret = 0;
+        for (int low = start + fSize, high = end + fSize + 1; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret += fTree[low++];
+            if ((high & 1) == 1)
+                ret += fTree[--high];
         }
+        return ret;
+    }
 
-        STNode node = new STNode();
-        int mid = low + (high - low) / 2;
-        node.left = buildTree(low, mid);
-        node.right = buildTree(mid + 1, high);
-        node.start = low;
-        node.end = high;
+    @Override
+    public void update(int index, int val) {
+        if (index < 0 || index >= fSize)
+            return;
 
-        node.val = node.left.val + node.right.val;
-        return node;
+        int i = index + fSize;
+        fTree[i] = val;
+        for (i >>= 1; i > 0; i >>= 1)
+            fTree[i] = fTree[2 * i] + fTree[2 * i + 1];
     }
 
     /**
-     * Uses the interval tree to sum over the given range
-     *
-     * @param start start of the range
-     * @param end   end of the range
-     * @return the sum
+     * Answers a batch of range sums, out[i] = sum(starts[i], ends[i]) accumulated as a long
      */
-    int sum(int start, int end) {
-        return sum(start, end, fHead);
+    void sumAll(int[] starts, int[] ends, long[] out) {
+        sumAll(starts, ends, out, null);
     }
 
-    private int sum(int start, int end, STNode node) {
-        if (start > end)
-            return 0;
-
-        if (node == null)
-            return 0;
+    /**
+     * Answers a batch of range sums, splitting the batch across pool when it is large enough.
+     * A batch with about one query per log n elements or more is answered from prefix sums of the
+     * leaves, built once in O(n), so every query costs two reads. Smaller batches walk the tree
+     * in order of their start index so neighbouring queries touch the same nodes.
+     *
+     * @param pool pool to run on, or null to answer on the calling thread
+     */
+    void sumAll(int[] starts, int[] ends, long[] out, ForkJoinPool pool) {
+        int queries = starts.length;
+        if (ends.length != queries || out.length < queries)
+            throw new IllegalArgumentException("Need a start, an end and an output slot for every query");
+
+        long[] prefix = null;
+        long[] order = null;
+        if ((long) queries * (32 - Integer.numberOfLeadingZeros(fSize)) >= fSize) {
+            prefix = new long[fSize + 1];
+            for (int i = 0; i < fSize; i++)
+                prefix[i + 1] = prefix[i] + fTree[fSize + i];
+        } else {
+            // start in the high half and query index in the low half, so sorting the keys sorts the queries
+            order = new long[queries];
+            for (int i = 0; i < queries; i++)
+                order[i] = (long) Math.max(starts[i], 0) << 32 | i;
+            Arrays.sort(order);
+        }
 
-        if (start > node.end)
-            return 0;
-        if (end < node.start)
-            return 0;
+        boolean parallel = pool != null && queries >= PARALLEL_THRESHOLD;
+        SumAllTask task = new SumAllTask(this, starts, ends, out, prefix, order, parallel, 0, queries);
+        if (parallel)
+            pool.invoke(task);
+        else task.compute();
+    }
 
-        if (start == node.start && end == node.end)
-            return node.val;
+    private static class SumAllTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SegmentTree fSegmentTree;
+        private final int[] fStarts;
+        private final int[] fEnds;
+        private final long[] fOut;
+        private final long[] fPrefix;
+        private final long[] fOrder;
+        // split only when the caller gave sumAll a pool, a worker thread calling without one answers inline
+        private final boolean fParallel;
+        private final int fLow;
+        private final int fHigh;
+
+        SumAllTask(SegmentTree segmentTree, int[] starts, int[] ends, long[] out, long[] prefix, long[] order,
+                   boolean parallel, int low, int high) {
+            fSegmentTree = segmentTree;
+            fStarts = starts;
+            fEnds = ends;
+            fOut = out;
+            fPrefix = prefix;
+            fOrder = order;
+            fParallel = parallel;
+            fLow = low;
+            fHigh = high;
+        }
 
-        int mid = node.start + (node.end - node.start) / 2;
-        return sum(start, Math.min(mid, end), node.left) + sum(Math.max(mid + 1, start), end, node.right);
+        @Override
+        protected void compute() {
+            if (fParallel && fHigh - fLow > PARALLEL_THRESHOLD) {
+                int mid = fLow + (fHigh - fLow) / 2;
+                invokeAll(new SumAllTask(fSegmentTree, fStarts, fEnds, fOut, fPrefix, fOrder, true, fLow, mid),
+                        new SumAllTask(fSegmentTree, fStarts, fEnds, fOut, fPrefix, fOrder, true, mid, fHigh));
+                return;
+            }
+
+            if (fPrefix != null) {
+                for (int i = fLow; i < fHigh; i++) {
+                    int start = Math.max(fStarts[i], 0);
+                    int end = Math.min(fEnds[i], fSegmentTree.fSize - 1);
+                    fOut[i] = start > end ? 0 : fPrefix[end + 1] - fPrefix[start];
+                }
+            } else {
+                for (int i = fLow; i < fHigh; i++) {
+                    int query = (int) fOrder[i];
+                    fOut[query] = fSegmentTree.longSum(fStarts[query], fEnds[query]);
+                }
+            }
+        }
     }
 
-    void update(int index, int val) {
-        update(index, val, fHead);
+    private long longSum(int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+
+        long ret = 0;
+        for (int low = start + fSize, high = end + fSize + 1; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret += fTree[low++];
+            if ((high & 1) == 1)
+                ret += fTree[--high];
+        }
+        return ret;
     }
 
-    private void update(int index, int val, STNode node) {
-        if(node == null)
-            return;
+    /**
+     * Smallest index whose prefix sum sum(0, index) is at least k, found in one descent through the
+     * internal sums. Only meaningful when no element is negative, so that prefix sums never decrease
+     *
+     * @return the index, or -1 if even the whole tree sums to less than k
+     */
+    int lowerBoundPrefix(long k) {
+        return lowerBound(0, fSize - 1, k);
+    }
 
-        if(index < node.start || index > node.end)
-            return;
+    /**
+     * Treats each element as a count of occurrences at its index and finds where the k-th one falls
+     *
+     * @param k which occurrence, counting from 1
+     * @return the index, or -1 if there are fewer than k occurrences
+     */
+    int kthOccurrence(long k) {
+        if (k < 1)
+            throw new IllegalArgumentException("Occurrences are counted from 1");
+        return lowerBound(0, fSize - 1, k);
+    }
 
-        if(index == node.start && index == node.end) {
-            node.val = val;
-            return;
+    /**
+     * First index in [start, end] where the running sum from start reaches k. The nodes covering the range
+     * are visited left to right, nodes on the left edge as the walk climbs and nodes on the right edge
+     * afterwards in the reverse order they were found. The first node that reaches k holds the answer.
+     */
+    private int lowerBound(int start, int end, long k) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+
+        long acc = 0;
+        int[] right = new int[32];
+        int top = 0;
+        for (int low = start + fSize, high = end + fSize + 1; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1) {
+                if (acc + fTree[low] >= k)
+                    return lowerBoundIn(low, acc, k);
+                acc += fTree[low++];
+            }
+            if ((high & 1) == 1)
+                right[top++] = --high;
         }
+        while (top > 0) {
+            int node = right[--top];
+            if (acc + fTree[node] >= k)
+                return lowerBoundIn(node, acc, k);
+            acc += fTree[node];
+        }
+        return -1;
+    }
 
-        int mid = node.start + (node.end - node.start) / 2;
-
-        if(index <= mid)
-            update(index, val, node.left);
-        else update(index, val, node.right);
+    /**
+     * Walks down from a node covering part of the range, every leaf below it sits at the same depth
+     */
+    private int lowerBoundIn(int node, long acc, long k) {
+        while (node < fSize) {
+            node *= 2;
+            if (acc + fTree[node] < k)
+                acc += fTree[node++];
+        }
+        return node - fSize;
+    }
 
-        node.val = node.left.val + node.right.val;
+    @Override
+    public int size() {
+        return fSize;
     }
 }
 
@@ -124,18 +255,19 @@ class SegmentTreeTest {
     void testSTStructure() {
         int[] input = new int[]{1, 2, 3, 4, 5, 6};
         SegmentTree sg = new SegmentTree(input);
-        assertEquals(21, sg.fHead.val);
-        assertEquals(6, sg.fHead.left.val);
-        assertEquals(15, sg.fHead.right.val);
+        assertEquals(12, sg.fTree.length);
+        assertEquals(21, sg.fTree[1]);
 
-        assertEquals(0, sg.fHead.start);
-        assertEquals(5, sg.fHead.end);
+        // elements 2 and 3, then elements 4 and 5
+        assertEquals(7, sg.fTree[4]);
+        assertEquals(11, sg.fTree[5]);
+        assertEquals(18, sg.fTree[2]);
 
-        assertEquals(0, sg.fHead.left.start);
-        assertEquals(2, sg.fHead.left.end);
+        // elements 0 and 1
+        assertEquals(3, sg.fTree[3]);
 
-        assertEquals(3, sg.fHead.right.start);
-        assertEquals(5, sg.fHead.right.end);
+        for (int i = 0; i < input.length; i++)
+            assertEquals(input[i], sg.fTree[input.length + i]);
     }
 
     @Test
@@ -161,4 +293,268 @@ class SegmentTreeTest {
         sg.update(0, 2);
         assertEquals(4, sg.sum(0, 1));
     }
+
+    @Test
+    void testOutOfRangeIsIgnored() {
+        int[] input = new int[]{1, 2, 3, 4, 5, 6};
+        SegmentTree sg = new SegmentTree(input);
+
+        assertEquals(21, sg.sum(-3, 10));
+        assertEquals(0, sg.sum(4, 2));
+        sg.update(6, 100);
+        sg.update(-1, 100);
+        assertEquals(21, sg.sum(0, 5));
+    }
+
+    @Test
+    void testRandomAgainstBruteForce() {
+        Random rand = new Random();
+        int[] input = generateInput(1000, 1000);
+        SegmentTree sg = new SegmentTree(input);
+
+        for (int trial = 0; trial < 10000; trial++) {
+            if (rand.nextBoolean()) {
+                int index = rand.nextInt(input.length);
+                input[index] = rand.nextInt(1000);
+                sg.update(index, input[index]);
+            } else {
+                int start = rand.nextInt(input.length);
+                int end = start + rand.nextInt(input.length - start);
+                int expected = 0;
+                for (int i = start; i <= end; i++)
+                    expected += input[i];
+                assertEquals(expected, sg.sum(start, end));
+            }
+        }
+    }
+
+    @Test
+    void testSumRuntime() {
+        final int queries = 1000000;
+        int[] input = generateInput(1000000, 1000);
+        SegmentTree sg = new SegmentTree(input);
+
+        Random rand = new Random();
+        int[] starts = new int[queries];
+        int[] ends = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            starts[i] = rand.nextInt(input.length);
+            ends[i] = starts[i] + rand.nextInt(input.length - starts[i]);
+        }
+
+        long[] total = new long[1];
+        measureRuntime(() -> {
+            for (int i = 0; i < queries; i++)
+                total[0] += sg.sum(starts[i], ends[i]);
+        }, "Duration for 1M segment tree sums %s nanoseconds");
+        assertTrue(total[0] > 0);
+
+        measureRuntime(() -> {
+            for (int i = 0; i < queries; i++)
+                sg.update(starts[i], ends[i]);
+        }, "Duration for 1M segment tree updates %s nanoseconds");
+    }
+
+    @Test
+    void testSumAllMatchesSum() {
+        Random rand = new Random();
+        int[] input = generateInput(10000, 1000);
+        SegmentTree sg = new SegmentTree(input);
+
+        // a small batch walks the tree and a large one uses prefix sums
+        for (int queries : new int[]{10, 100000}) {
+            int[] starts = new int[queries];
+            int[] ends = new int[queries];
+            for (int i = 0; i < queries; i++) {
+                starts[i] = rand.nextInt(input.length + 10) - 5;
+                ends[i] = starts[i] + rand.nextInt(input.length) - 5;
+            }
+
+            long[] out = new long[queries];
+            long[] parallelOut = new long[queries];
+            sg.sumAll(starts, ends, out);
+            sg.sumAll(starts, ends, parallelOut, ForkJoinPool.commonPool());
+
+            for (int i = 0; i < queries; i++) {
+                assertEquals(sg.sum(starts[i], ends[i]), out[i]);
+                assertEquals(out[i], parallelOut[i]);
+            }
+        }
+    }
+
+    @Test
+    void testSumAllWithoutPoolStaysOnWorkerThread() {
+        Random rand = new Random();
+        int[] input = generateInput(1 << 16, 1000);
+        SegmentTree sg = new SegmentTree(input);
+
+        final int queries = 1 << 20;
+        int[] starts = new int[queries];
+        int[] ends = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            starts[i] = rand.nextInt(input.length);
+            ends[i] = starts[i] + rand.nextInt(input.length - starts[i]);
+        }
+
+        // called from a worker thread without a pool, nothing may be forked for the idle workers to steal
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            long[] out = new long[queries];
+            long steals = pool.submit(() -> {
+                long before = pool.getStealCount();
+                sg.sumAll(starts, ends, out, null);
+                return pool.getStealCount() - before;
+            }).join();
+
+            assertEquals(0, steals);
+            for (int i = 0; i < queries; i++)
+                assertEquals(sg.sum(starts[i], ends[i]), out[i]);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testSumAllRuntimeComparison() {
+        final int queries = 1000000;
+        int[] input = generateInput(1000000, 1000);
+        SegmentTree sg = new SegmentTree(input);
+
+        Random rand = new Random();
+        int[] starts = new int[queries];
+        int[] ends = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            starts[i] = rand.nextInt(input.length);
+            ends[i] = starts[i] + rand.nextInt(input.length - starts[i]);
+        }
+
+        long[] expected = new long[queries];
+        long[] out = new long[queries];
+        for (int round = 0; round < 3; round++) {
+            measureRuntime(() -> {
+                for (int i = 0; i < queries; i++)
+                    expected[i] = sg.sum(starts[i], ends[i]);
+            }, "Duration for 1M segment tree sums in a loop %s nanoseconds");
+
+            measureRuntime(() -> sg.sumAll(starts, ends, out),
+                    "Duration for 1M segment tree sums in one batch %s nanoseconds");
+            assertArrayEquals(expected, out);
+
+            Arrays.fill(out, -1);
+            measureRuntime(() -> sg.sumAll(starts, ends, out, ForkJoinPool.commonPool()),
+                    "Duration for 1M segment tree sums in one parallel batch %s nanoseconds");
+            assertArrayEquals(expected, out);
+        }
+    }
+
+    @Test
+    void testLowerBoundPrefix() {
+        int[] input = new int[]{1, 0, 3, 4, 0, 6};
+        SegmentTree sg = new SegmentTree(input);
+
+        assertEquals(0, sg.lowerBoundPrefix(0));
+        assertEquals(0, sg.lowerBoundPrefix(1));
+        assertEquals(2, sg.lowerBoundPrefix(2));
+        assertEquals(2, sg.lowerBoundPrefix(4));
+        assertEquals(3, sg.lowerBoundPrefix(5));
+        assertEquals(5, sg.lowerBoundPrefix(9));
+        assertEquals(5, sg.lowerBoundPrefix(14));
+        assertEquals(-1, sg.lowerBoundPrefix(15));
+    }
+
+    @Test
+    void testKthOccurrence() {
+        int[] input = new int[]{0, 1, 1, 0, 0, 1, 0};
+        SegmentTree sg = new SegmentTree(input);
+
+        assertEquals(1, sg.kthOccurrence(1));
+        assertEquals(2, sg.kthOccurrence(2));
+        assertEquals(5, sg.kthOccurrence(3));
+        assertEquals(-1, sg.kthOccurrence(4));
+
+        sg.update(2, 0);
+        sg.update(6, 1);
+        assertEquals(5, sg.kthOccurrence(2));
+        assertEquals(6, sg.kthOccurrence(3));
+    }
+
+    @Test
+    void testLowerBoundPrefixAgainstBruteForce() {
+        Random rand = new Random();
+        for (int size = 1; size < 70; size++) {
+            int[] input = generateInput(size, 4);
+            SegmentTree sg = new SegmentTree(input);
+
+            long total = 0;
+            for (int val : input)
+                total += val;
+            for (long k = 0; k <= total + 1; k++) {
+                int expected = -1;
+                long prefix = 0;
+                for (int i = 0; i < size && expected == -1; i++) {
+                    prefix += input[i];
+                    if (prefix >= k)
+                        expected = i;
+                }
+                assertEquals(expected, sg.lowerBoundPrefix(k));
+            }
+
+            int index = rand.nextInt(size);
+            sg.update(index, input[index] + 1);
+            assertEquals(index, sg.lowerBoundPrefix(sg.sum(0, index)));
+        }
+    }
+
+    @Test
+    void testLowerBoundPrefixRuntimeComparison() {
+        final int queries = 1000000;
+        int[] input = generateInput(1000000, 1000);
+        SegmentTree sg = new SegmentTree(input);
+        long total = sg.sum(0, input.length - 1);
+
+        Random rand = new Random();
+        long[] ks = new long[queries];
+        for (int i = 0; i < queries; i++)
+            ks[i] = 1 + (long) (rand.nextDouble() * total);
+
+        int[] binarySearch = new int[queries];
+        int[] descent = new int[queries];
+        measureRuntime(() -> {
+            for (int i = 0; i < queries; i++) {
+                int low = 0;
+                int high = input.length - 1;
+                while (low < high) {
+                    int mid = low + (high - low) / 2;
+                    if (sg.sum(0, mid) >= ks[i])
+                        high = mid;
+                    else low = mid + 1;
+                }
+                binarySearch[i] = low;
+            }
+        }, "Duration for 1M prefix lookups by binary search over sum %s nanoseconds");
+
+        measureRuntime(() -> {
+            for (int i = 0; i < queries; i++)
+                descent[i] = sg.lowerBoundPrefix(ks[i]);
+        }, "Duration for 1M prefix lookups by tree descent %s nanoseconds");
+
+        for (int i = 0; i < queries; i++)
+            assertEquals(binarySearch[i], descent[i]);
+    }
+
+    private int[] generateInput(int size, int maxVal) {
+        Random rand = new Random();
+        int[] input = new int[size];
+        for (int j = 0; j < size; j++) {
+            input[j] = rand.nextInt(maxVal);
+        }
+        return input;
+    }
+
+    private void measureRuntime(Runnable r, String msg) {
+        long startTime = System.nanoTime();
+        r.run();
+        long endTime = System.nanoTime();
+        System.out.println(String.format(msg, (endTime - startTime)));
+    }
 }
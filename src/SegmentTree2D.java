@@ -0,0 +1,299 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Sum segment tree over a grid, the bottom-up layout of SegmentTree applied to rows and then to columns.
+ * Node (r, c) lives at fTree[r * 2 * cols + c]. Row r >= rows is grid row r - rows and row r < rows holds the
+ * sum of rows 2r and 2r + 1, the same goes for columns within a row, so the whole grid sums to node (1, 1).
+ * Rectangle sums and point updates both touch O(log rows * log cols) nodes.
+ */
+class SegmentTree2D {
+
+    // some VMs reserve a few header words in every array
+    private static final int MAX_NODES = Integer.MAX_VALUE - 8;
+
+    private final int fRows;
+    private final int fCols;
+    // width of one row of nodes
+    private final int fStride;
+    long[] fTree;
+
+    /**
+     * Every node offset is below 4 * rows * cols, so checking that once in long arithmetic keeps the int offsets
+     * used by the queries and updates from overflowing
+     */
+    SegmentTree2D(int rows, int cols) {
+        if (rows < 0 || cols < 0)
+            throw new IllegalArgumentException("Grid of " + rows + " x " + cols + " has a negative side");
+        // rows * cols fits in a long for any two ints, four times it may not
+        if ((long) rows * cols > MAX_NODES / 4)
+            throw new IllegalArgumentException("Grid of " + rows + " x " + cols
+                    + " needs more nodes than an array can hold");
+
+        fRows = rows;
+        fCols = cols;
+        fStride = 2 * cols;
+        fTree = new long[2 * rows * fStride];
+    }
+
+    SegmentTree2D(int[][] grid) {
+        this(grid.length, grid.length == 0 ? 0 : grid[0].length);
+        buildTree(grid);
+    }
+
+    private void buildTree(int[][] grid) {
+        for (int r = 0; r < fRows; r++) {
+            if (grid[r].length != fCols)
+                throw new IllegalArgumentException("Every row needs " + fCols + " columns");
+
+            int row = (fRows + r) * fStride;
+            for (int c = 0; c < fCols; c++)
+                fTree[row + fCols + c] = grid[r][c];
+            for (int c = fCols - 1; c > 0; c--)
+                fTree[row + c] = fTree[row + 2 * c] + fTree[row + 2 * c + 1];
+        }
+
+        for (int r = fRows - 1; r > 0; r--) {
+            int row = r * fStride;
+            int top = 2 * r * fStride;
+            int bottom = top + fStride;
+            for (int c = 1; c < fStride; c++)
+                fTree[row + c] = fTree[top + c] + fTree[bottom + c];
+        }
+    }
+
+    /**
+     * Sums the rectangle between the two corners, any part of it outside the grid is ignored
+     *
+     * @param startRow first row inclusive
+     * @param startCol first column inclusive
+     * @param endRow   last row inclusive
+     * @param endCol   last column inclusive
+     */
+    long sum(int startRow, int startCol, int endRow, int endCol) {
+        startRow = Math.max(startRow, 0);
+        endRow = Math.min(endRow, fRows - 1);
+        startCol = Math.max(startCol, 0);
+        endCol = Math.min(endCol, fCols - 1);
+        if (startCol > endCol)
+            return 0;
+
+        long ret = 0;
+        for (int low = startRow + fRows, high = endRow + fRows + 1; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret += rowSum(low++, startCol, endCol);
+            if ((high & 1) == 1)
+                ret += rowSum(--high, startCol, endCol);
+        }
+        return ret;
+    }
+
+    private long rowSum(int r, int start, int end) {
+        int row = r * fStride;
+        long ret = 0;
+        for (int low = start + fCols, high = end + fCols + 1; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1)
+                ret += fTree[row + low++];
+            if ((high & 1) == 1)
+                ret += fTree[row + --high];
+        }
+        return ret;
+    }
+
+    /**
+     * Sets the value at (row, col)
+     */
+    void update(int row, int col, long val) {
+        if (row < 0 || row >= fRows || col < 0 || col >= fCols)
+            return;
+        add(row, col, val - fTree[(row + fRows) * fStride + col + fCols]);
+    }
+
+    /**
+     * Adds delta to the value at (row, col), every node above it on both axes changes by the same amount
+     */
+    void add(int row, int col, long delta) {
+        if (row < 0 || row >= fRows || col < 0 || col >= fCols)
+            return;
+
+        for (int r = row + fRows; r > 0; r >>= 1) {
+            int base = r * fStride;
+            for (int c = col + fCols; c > 0; c >>= 1)
+                fTree[base + c] += delta;
+        }
+    }
+
+    /**
+     * @return the value at (row, col), or 0 outside the grid like sum
+     */
+    long get(int row, int col) {
+        if (row < 0 || row >= fRows || col < 0 || col >= fCols)
+            return 0;
+        return fTree[(row + fRows) * fStride + col + fCols];
+    }
+
+    int rows() {
+        return fRows;
+    }
+
+    int cols() {
+        return fCols;
+    }
+}
+
+
+class SegmentTree2DTest {
+
+    @Test
+    void testSum() {
+        int[][] grid = new int[][]{
+                {1, 2, 3},
+                {4, 5, 6},
+                {7, 8, 9}
+        };
+        SegmentTree2D sg = new SegmentTree2D(grid);
+
+        assertEquals(45, sg.sum(0, 0, 2, 2));
+        assertEquals(12, sg.sum(0, 0, 1, 1));
+        assertEquals(28, sg.sum(1, 1, 2, 2));
+        assertEquals(15, sg.sum(0, 1, 2, 1));
+        assertEquals(5, sg.sum(1, 1, 1, 1));
+        assertEquals(45, sg.sum(-1, -5, 10, 10));
+        assertEquals(0, sg.sum(2, 0, 1, 2));
+    }
+
+    @Test
+    void testUpdate() {
+        int[][] grid = new int[][]{
+                {1, 2, 3, 4},
+                {5, 6, 7, 8}
+        };
+        SegmentTree2D sg = new SegmentTree2D(grid);
+
+        sg.update(1, 2, 100);
+        assertEquals(100, sg.get(1, 2));
+        assertEquals(129, sg.sum(0, 0, 1, 3));
+        sg.add(0, 0, -1);
+        assertEquals(5, sg.sum(0, 0, 1, 0));
+
+        sg.update(2, 0, 5);
+        sg.add(0, 4, 5);
+        assertEquals(128, sg.sum(0, 0, 1, 3));
+    }
+
+    @Test
+    void testGetOutsideTheGrid() {
+        SegmentTree2D sg = new SegmentTree2D(new int[][]{{1, 2}, {3, 4}});
+
+        assertEquals(4, sg.get(1, 1));
+        assertEquals(0, sg.get(1, -1));
+        assertEquals(0, sg.get(0, 2));
+        assertEquals(0, sg.get(-1, 0));
+        assertEquals(0, sg.get(2, 0));
+        assertEquals(0, new SegmentTree2D(0, 0).get(0, 0));
+    }
+
+    @Test
+    void testRejectsGridsTooLargeForAnArray() {
+        assertThrows(IllegalArgumentException.class, () -> new SegmentTree2D(50000, 50000));
+        assertThrows(IllegalArgumentException.class, () -> new SegmentTree2D(1, 1 << 30));
+        assertThrows(IllegalArgumentException.class, () -> new SegmentTree2D(Integer.MAX_VALUE, Integer.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> new SegmentTree2D(-1, 5));
+
+        SegmentTree2D empty = new SegmentTree2D(0, 0);
+        assertEquals(0, empty.sum(0, 0, 10, 10));
+    }
+
+    @Test
+    void testRandomAgainstBruteForce() {
+        Random rand = new Random();
+        for (int[] shape : new int[][]{{1, 1}, {1, 17}, {13, 1}, {30, 41}, {64, 32}}) {
+            int[][] grid = generateInput(shape[0], shape[1], 1000);
+            SegmentTree2D sg = new SegmentTree2D(grid);
+
+            for (int trial = 0; trial < 2000; trial++) {
+                int r1 = rand.nextInt(shape[0]);
+                int c1 = rand.nextInt(shape[1]);
+                if (rand.nextBoolean()) {
+                    grid[r1][c1] = rand.nextInt(1000);
+                    sg.update(r1, c1, grid[r1][c1]);
+                } else {
+                    int r2 = r1 + rand.nextInt(shape[0] - r1);
+                    int c2 = c1 + rand.nextInt(shape[1] - c1);
+                    long expected = 0;
+                    for (int r = r1; r <= r2; r++) {
+                        for (int c = c1; c <= c2; c++)
+                            expected += grid[r][c];
+                    }
+                    assertEquals(expected, sg.sum(r1, c1, r2, c2));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testRuntimeComparison() {
+        final int rows = 1000;
+        final int cols = 1000;
+        final int queries = 100000;
+        int[][] grid = generateInput(rows, cols, 1000);
+
+        SegmentTree2D sg = new SegmentTree2D(grid);
+        SegmentTree[] nested = new SegmentTree[rows];
+        for (int r = 0; r < rows; r++)
+            nested[r] = new SegmentTree(grid[r]);
+
+        Random rand = new Random();
+        int[][] rects = new int[queries][];
+        for (int i = 0; i < queries; i++) {
+            int r1 = rand.nextInt(rows);
+            int c1 = rand.nextInt(cols);
+            rects[i] = new int[]{r1, c1, r1 + rand.nextInt(rows - r1), c1 + rand.nextInt(cols - c1)};
+        }
+
+        long[] totals = new long[2];
+        for (int round = 0; round < 3; round++) {
+            measureRuntime(() -> {
+                for (int[] rect : rects) {
+                    for (int r = rect[0]; r <= rect[2]; r++)
+                        totals[0] += nested[r].sum(rect[1], rect[3]);
+                }
+            }, "Duration for 100K rectangle sums over nested 1D segment trees %s nanoseconds");
+
+            measureRuntime(() -> {
+                for (int[] rect : rects)
+                    totals[1] += sg.sum(rect[0], rect[1], rect[2], rect[3]);
+            }, "Duration for 100K rectangle sums over a 2D segment tree %s nanoseconds");
+        }
+        assertEquals(totals[0], totals[1]);
+
+        measureRuntime(() -> {
+            for (int i = 0; i < queries; i++)
+                sg.add(rects[i][0], rects[i][1], 1);
+        }, "Duration for 100K 2D segment tree updates %s nanoseconds");
+        assertTrue(sg.sum(0, 0, rows - 1, cols - 1) > 0);
+    }
+
+    private int[][] generateInput(int rows, int cols, int maxVal) {
+        Random rand = new Random();
+        int[][] input = new int[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++)
+                input[r][c] = rand.nextInt(maxVal);
+        }
+        return input;
+    }
+
+    private void measureRuntime(Runnable r, String msg) {
+        long startTime = System.nanoTime();
+        r.run();
+        long endTime = System.nanoTime();
+        System.out.println(String.format(msg, (endTime - startTime)));
+    }
+}
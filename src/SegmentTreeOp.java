@@ -0,0 +1,6 @@
+/**
+ * Operations the primitive segment trees are specialized for
+ */
+enum SegmentTreeOp {
+    SUM, MIN, MAX
+}
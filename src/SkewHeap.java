@@ -2,6 +2,10 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -14,11 +18,13 @@ class SkewHeapNode {
 
 class SkewHeap {
 
+    // below this many elements a sub-heap is built on the calling thread
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
     SkewHeapNode fHead;
     int fSize;
 
     SkewHeap() {
-        fHead = new SkewHeapNode();
     }
 
     SkewHeap(int val) {
@@ -51,6 +57,66 @@ class SkewHeap {
         fHead = ret.fHead;
     }
 
+    /**
+     * Builds a heap from arr by splitting it in halves, building both halves in the pool
+     * and melding the results back up the reduction tree
+     */
+    static SkewHeap parallelBuild(int[] arr, ForkJoinPool pool) {
+        SkewHeap ret = new SkewHeap();
+        ret.fHead = arr.length == 0 ? null : pool.invoke(new BuildTask(arr, 0, arr.length));
+        ret.fSize = arr.length;
+        return ret;
+    }
+
+    /**
+     * Builds a heap out of arr[low, high) by melding single nodes pairwise
+     */
+    private static SkewHeapNode build(int[] arr, int low, int high) {
+        int n = high - low;
+        SkewHeapNode[] roots = new SkewHeapNode[n];
+        for (int i = 0; i < n; i++) {
+            roots[i] = new SkewHeapNode();
+            roots[i].fVal = arr[low + i];
+        }
+
+        while (n > 1) {
+            int half = 0;
+            for (int i = 0; i + 1 < n; i += 2)
+                roots[half++] = meld(roots[i], roots[i + 1]);
+            if ((n & 1) == 1)
+                roots[half++] = roots[n - 1];
+            n = half;
+        }
+        return roots[0];
+    }
+
+    private static class BuildTask extends RecursiveTask<SkewHeapNode> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] fArr;
+        private final int fLow;
+        private final int fHigh;
+
+        BuildTask(int[] arr, int low, int high) {
+            fArr = arr;
+            fLow = low;
+            fHigh = high;
+        }
+
+        @Override
+        protected SkewHeapNode compute() {
+            if (fHigh - fLow <= PARALLEL_THRESHOLD)
+                return build(fArr, fLow, fHigh);
+
+            int mid = fLow + (fHigh - fLow) / 2;
+            BuildTask left = new BuildTask(fArr, fLow, mid);
+            BuildTask right = new BuildTask(fArr, mid, fHigh);
+            left.fork();
+            SkewHeapNode rightHead = right.compute();
+            return meld(left.join(), rightHead);
+        }
+    }
+
     void meld(SkewHeap other) {
         SkewHeapNode ret = meld(fHead, other.fHead);
         fSize += other.fSize;
@@ -58,11 +124,15 @@ class SkewHeap {
     }
 
     void insert(int val) {
-        SkewHeap newHeap = new SkewHeap(val);
-        meld(newHeap);
+        SkewHeapNode node = new SkewHeapNode();
+        node.fVal = val;
+        fHead = meld(fHead, node);
+        fSize++;
     }
 
     int min() {
+        if (fHead == null)
+            throw new NoSuchElementException("No elements in the heap!");
         return fHead.fVal;
     }
 
@@ -73,7 +143,74 @@ class SkewHeap {
         return ret;
     }
 
-    SkewHeapNode meld(SkewHeapNode one, SkewHeapNode two) {
+    /**
+     * Pops up to max elements in ascending order into the front of dest
+     *
+     * @return number of elements popped
+     */
+    int popInto(int[] dest, int max) {
+        max = Math.min(max, dest.length);
+        SkewHeapNode head = fHead;
+        int count = 0;
+        try {
+            while (count < max && head != null) {
+                dest[count] = head.fVal;
+                head = meld(head.fLeft, head.fRight);
+                count++;
+            }
+        } finally {
+            fHead = head;
+            fSize -= count;
+        }
+        return count;
+    }
+
+    /**
+     * Pops every element in ascending order into action
+     *
+     * @return number of elements popped
+     */
+    int drainTo(IntConsumer action) {
+        SkewHeapNode head = fHead;
+        int count = 0;
+        // meld rewires the popped nodes, so the heap has to be written back even if action throws
+        try {
+            while (head != null) {
+                action.accept(head.fVal);
+                head = meld(head.fLeft, head.fRight);
+                count++;
+            }
+        } finally {
+            fHead = head;
+            fSize -= count;
+        }
+        return count;
+    }
+
+    /**
+     * Offers the minimum to condition and pops it if accepted, stopping at the first element it rejects
+     *
+     * @return number of elements popped
+     */
+    int popWhile(IntPredicate condition) {
+        SkewHeapNode head = fHead;
+        int count = 0;
+        try {
+            while (head != null && condition.test(head.fVal)) {
+                head = meld(head.fLeft, head.fRight);
+                count++;
+            }
+        } finally {
+            fHead = head;
+            fSize -= count;
+        }
+        return count;
+    }
+
+    /**
+     * Melds two heaps top-down without recursion, so the merge path can be arbitrarily long
+     */
+    static SkewHeapNode meld(SkewHeapNode one, SkewHeapNode two) {
         if (two == null)
             return one;
         if (one == null)
@@ -85,16 +222,29 @@ class SkewHeap {
             two = tmp;
         }
 
-        SkewHeapNode tmp = one.fLeft;
-        one.fLeft = one.fRight;
-        one.fRight = tmp;
+        SkewHeapNode root = one;
+        SkewHeapNode parent = one;
+
+        // the parent's right subtree still has to be melded with two, its old left child moves over to the right
+        one = parent.fRight;
+        parent.fRight = parent.fLeft;
 
-        tmp = two.fLeft;
-        two.fLeft = two.fRight;
-        two.fRight = tmp;
+        while (one != null && two != null) {
+            if (one.fVal > two.fVal) {
+                SkewHeapNode tmp = one;
+                one = two;
+                two = tmp;
+            }
+
+            parent.fLeft = one;
+            parent = one;
+
+            one = parent.fRight;
+            parent.fRight = parent.fLeft;
+        }
 
-        one.fLeft = meld(one.fLeft, two);
-        return one;
+        parent.fLeft = one == null ? two : one;
+        return root;
     }
 
     int size() {
@@ -184,6 +334,18 @@ class SkewHeapTest {
         Assertions.assertThrows(NoSuchElementException.class, tree::pop);
     }
 
+    @Test
+    void testInsertIntoEmptyHeap() {
+        SkewHeap heap = new SkewHeap();
+        Assertions.assertThrows(NoSuchElementException.class, heap::pop);
+
+        heap.insert(3);
+        heap.insert(1);
+        assertEquals(1, heap.pop());
+        assertEquals(3, heap.pop());
+        assertTrue(heap.isEmpty());
+    }
+
     @Test
     void testMinRuntimeComparison() {
         int[] firstArr = generateInput(1000000, 100000);
@@ -231,6 +393,44 @@ class SkewHeapTest {
                 "Duration for priority queue build %s nanoseconds");
     }
 
+    @Test
+    void testParallelBuild() {
+        int[] input = generateInput(1000000, 100000);
+        SkewHeap heap = SkewHeap.parallelBuild(input, ForkJoinPool.commonPool());
+        assertEquals(input.length, heap.size());
+
+        int[] sorted = input.clone();
+        Arrays.sort(sorted);
+        for (int i : sorted)
+            assertEquals(i, heap.pop());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    void testParallelBuildEmptyAndSmall() {
+        SkewHeap empty = SkewHeap.parallelBuild(new int[0], ForkJoinPool.commonPool());
+        assertTrue(empty.isEmpty());
+
+        SkewHeap heap = SkewHeap.parallelBuild(new int[]{3, 4, 5, 6, 2}, ForkJoinPool.commonPool());
+        assertEquals(2, heap.min());
+        assertEquals(5, heap.size());
+    }
+
+    @Test
+    void testParallelBuildRuntimeComparison() {
+        int[] firstArr = generateInput(10000000, 100000);
+
+        measureRuntime(() -> new SkewHeap(firstArr),
+                "Duration for Skew Heap serial build %s nanoseconds");
+
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            measureRuntime(() -> SkewHeap.parallelBuild(firstArr, pool),
+                    "Duration for Skew Heap parallel build on " + threads + " threads %s nanoseconds");
+            pool.shutdown();
+        }
+    }
+
     @Test
     void testMergeSkewHeapRuntime() {
         int[] firstArr = generateInput(1000000, 100000);
@@ -295,6 +495,110 @@ class SkewHeapTest {
         assertEquals(pqList, skewHeapList);
     }
 
+    @Test
+    void testSortedInputDoesNotOverflowStack() {
+        final int size = 10000000;
+        SkewHeap heap = new SkewHeap();
+
+        measureRuntime(() -> {
+            for (int i = 0; i < size; i++)
+                heap.insert(i);
+        }, "Duration for Skew Heap sorted insert %s nanoseconds");
+
+        SkewHeap other = new SkewHeap();
+        for (int i = size; i > 0; i--)
+            other.insert(-i);
+
+        heap.meld(other);
+        assertEquals(2 * size, heap.size());
+
+        for (int i = size; i > size - 1000; i--)
+            assertEquals(-i, heap.pop());
+    }
+
+    @Test
+    void testPopInto() {
+        SkewHeap heap = new SkewHeap(new int[]{1, 2, 5, 10, 3});
+        int[] dest = new int[3];
+
+        assertEquals(3, heap.popInto(dest, 5));
+        assertArrayEquals(new int[]{1, 2, 3}, dest);
+        assertEquals(2, heap.size());
+
+        assertEquals(1, heap.popInto(dest, 1));
+        assertEquals(5, dest[0]);
+
+        assertEquals(1, heap.popInto(dest, 3));
+        assertEquals(10, dest[0]);
+        assertTrue(heap.isEmpty());
+        assertEquals(0, heap.popInto(dest, 3));
+    }
+
+    @Test
+    void testDrainTo() {
+        SkewHeap heap = new SkewHeap(new int[]{4, 8, 1, 3});
+        List<Integer> drained = new ArrayList<>();
+
+        assertEquals(4, heap.drainTo(drained::add));
+        assertEquals(Arrays.asList(1, 3, 4, 8), drained);
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    void testBatchPopsKeepHeapWhenCallbackThrows() {
+        SkewHeap heap = new SkewHeap(new int[]{4, 8, 1, 3});
+        List<Integer> drained = new ArrayList<>();
+        Assertions.assertThrows(IllegalStateException.class, () -> heap.drainTo(val -> {
+            if (val == 4)
+                throw new IllegalStateException();
+            drained.add(val);
+        }));
+        assertEquals(Arrays.asList(1, 3), drained);
+        assertEquals(2, heap.size());
+
+        Assertions.assertThrows(IllegalStateException.class, () -> heap.popWhile(val -> {
+            if (val == 8)
+                throw new IllegalStateException();
+            return true;
+        }));
+        assertEquals(1, heap.size());
+        assertEquals(8, heap.pop());
+        assertEquals(0, heap.size());
+    }
+
+    @Test
+    void testPopWhile() {
+        SkewHeap heap = new SkewHeap(new int[]{4, 8, 1, 3, 6});
+
+        assertEquals(3, heap.popWhile(val -> val < 5));
+        assertEquals(6, heap.min());
+        assertEquals(2, heap.size());
+
+        assertEquals(0, heap.popWhile(val -> val < 5));
+        assertEquals(2, heap.popWhile(val -> true));
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    void testBatchHeapSortRuntimeComparison() {
+        int[] firstArr = generateInput(1000000, 100000);
+        SkewHeap heap = new SkewHeap(firstArr);
+        SkewHeap heap2 = new SkewHeap(firstArr);
+
+        int[] expected = new int[firstArr.length];
+        int[] actual = new int[firstArr.length];
+
+        measureRuntime(() -> {
+            for (int i = 0; i < expected.length; i++)
+                expected[i] = heap.pop();
+        }, "Duration for Skew Heap per element heapsort %s nanoseconds");
+
+        measureRuntime(() -> heap2.popInto(actual, actual.length),
+                "Duration for Skew Heap batch heapsort %s nanoseconds");
+
+        assertArrayEquals(expected, actual);
+    }
+
     private List<Integer> convertToList(int[] input) {
         List<Integer> ret = new ArrayList<>();
         for (int i : input)
@@ -0,0 +1,397 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Concurrent, relaxed priority queue made of independently locked SkewHeap shards.
+ * Inserts go to a random shard and pops take the smaller minimum of two random shards,
+ * so pop returns one of the smallest elements but not necessarily the smallest.
+ */
+class SkewHeapMultiQueue {
+    // published minimum of an empty shard, outside the range of int
+    private static final long EMPTY = Long.MAX_VALUE;
+
+    private final SkewHeap[] fShards;
+    private final ReentrantLock[] fLocks;
+
+    // minimum and size of every shard, written under the shard's lock and read without it
+    private final AtomicLongArray fMins;
+    private final AtomicIntegerArray fSizes;
+
+    SkewHeapMultiQueue() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    SkewHeapMultiQueue(int shards) {
+        if (shards < 2)
+            throw new IllegalArgumentException("Need at least two shards");
+
+        fShards = new SkewHeap[shards];
+        fLocks = new ReentrantLock[shards];
+        fMins = new AtomicLongArray(shards);
+        fSizes = new AtomicIntegerArray(shards);
+        for (int i = 0; i < shards; i++) {
+            fShards[i] = new SkewHeap();
+            fLocks[i] = new ReentrantLock();
+            fMins.set(i, EMPTY);
+        }
+    }
+
+    void insert(int val) {
+        int shard = lockRandomShard();
+        try {
+            fShards[shard].insert(val);
+            publish(shard);
+        } finally {
+            fLocks[shard].unlock();
+        }
+    }
+
+    /**
+     * Melds a whole heap into a single shard in O(log n). other is emptied, its nodes now belong to the queue
+     */
+    void insertAll(SkewHeap other) {
+        if (other.isEmpty())
+            return;
+
+        int shard = lockRandomShard();
+        try {
+            fShards[shard].meld(other);
+            other.fHead = null;
+            other.fSize = 0;
+            publish(shard);
+        } finally {
+            fLocks[shard].unlock();
+        }
+    }
+
+    /**
+     * Removes one of the smallest elements, comparing the minimums of two random shards
+     *
+     * @throws NoSuchElementException when every shard is empty
+     */
+    int pop() {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        int shards = fShards.length;
+
+        while (true) {
+            int one = rand.nextInt(shards);
+            int two = rand.nextInt(shards);
+            int shard = fMins.get(one) <= fMins.get(two) ? one : two;
+
+            if (fMins.get(shard) == EMPTY) {
+                if (isEmpty())
+                    throw new NoSuchElementException("No elements in the queue!");
+                continue;
+            }
+
+            if (!fLocks[shard].tryLock())
+                continue;
+            try {
+                // the shard may have been drained since its minimum was read
+                if (fShards[shard].isEmpty())
+                    continue;
+
+                int ret = fShards[shard].pop();
+                publish(shard);
+                return ret;
+            } finally {
+                fLocks[shard].unlock();
+            }
+        }
+    }
+
+    /**
+     * Moves elements from the largest shard to the smallest until their sizes are about equal.
+     * The moved elements are the largest shard's smallest ones, they are built into a heap
+     * and then melded into the smaller shard
+     */
+    void rebalance() {
+        int largest = 0;
+        int smallest = 0;
+        for (int i = 1; i < fShards.length; i++) {
+            if (fSizes.get(i) > fSizes.get(largest))
+                largest = i;
+            if (fSizes.get(i) < fSizes.get(smallest))
+                smallest = i;
+        }
+        if (largest == smallest)
+            return;
+
+        // always lock in index order so two rebalances cannot deadlock
+        ReentrantLock first = fLocks[Math.min(largest, smallest)];
+        ReentrantLock second = fLocks[Math.max(largest, smallest)];
+        first.lock();
+        second.lock();
+        try {
+            SkewHeap from = fShards[largest];
+            SkewHeap to = fShards[smallest];
+
+            // the sizes were read without the locks, other threads may have changed them since
+            int gap = (from.size() - to.size()) / 2;
+            if (gap <= 0)
+                return;
+
+            int[] moved = new int[gap];
+            for (int i = 0; i < moved.length; i++)
+                moved[i] = from.pop();
+            to.meld(new SkewHeap(moved));
+
+            publish(largest);
+            publish(smallest);
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+    }
+
+    /**
+     * Sum of the shard sizes, only exact while no other thread is modifying the queue
+     */
+    int size() {
+        int size = 0;
+        for (int i = 0; i < fShards.length; i++)
+            size += fSizes.get(i);
+        return size;
+    }
+
+    boolean isEmpty() {
+        for (int i = 0; i < fShards.length; i++) {
+            if (fSizes.get(i) > 0)
+                return false;
+        }
+        return true;
+    }
+
+    int shardSize(int shard) {
+        return fSizes.get(shard);
+    }
+
+    int shards() {
+        return fShards.length;
+    }
+
+    private int lockRandomShard() {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        while (true) {
+            int shard = rand.nextInt(fShards.length);
+            if (fLocks[shard].tryLock())
+                return shard;
+        }
+    }
+
+    /**
+     * Must be called while holding the shard's lock
+     */
+    private void publish(int shard) {
+        SkewHeap heap = fShards[shard];
+        fMins.set(shard, heap.isEmpty() ? EMPTY : heap.min());
+        fSizes.set(shard, heap.size());
+    }
+}
+
+
+class SkewHeapMultiQueueTest {
+
+    @Test
+    void testSingleThreaded() {
+        SkewHeapMultiQueue queue = new SkewHeapMultiQueue(4);
+        int[] input = generateInput(10000, 1000);
+        for (int i : input)
+            queue.insert(i);
+        assertEquals(input.length, queue.size());
+
+        int[] actual = new int[input.length];
+        for (int i = 0; i < actual.length; i++)
+            actual[i] = queue.pop();
+
+        assertTrue(queue.isEmpty());
+        assertThrows(NoSuchElementException.class, queue::pop);
+
+        Arrays.sort(input);
+        Arrays.sort(actual);
+        assertArrayEquals(input, actual);
+    }
+
+    @Test
+    void testPopIsRoughlyOrdered() {
+        SkewHeapMultiQueue queue = new SkewHeapMultiQueue(4);
+        for (int i = 0; i < 100000; i++)
+            queue.insert(i);
+
+        // with four shards the first pop should come from the very front of the queue
+        assertTrue(queue.pop() < 1000);
+    }
+
+    @Test
+    void testRebalance() {
+        SkewHeapMultiQueue queue = new SkewHeapMultiQueue(2);
+        queue.insertAll(new SkewHeap(generateInput(1000, 1000)));
+        queue.rebalance();
+
+        assertEquals(500, queue.shardSize(0));
+        assertEquals(500, queue.shardSize(1));
+        assertEquals(1000, queue.size());
+    }
+
+    @Test
+    void testInsertAllEmptiesOther() {
+        SkewHeapMultiQueue queue = new SkewHeapMultiQueue(2);
+        SkewHeap other = new SkewHeap(new int[]{5, 3, 8});
+        queue.insertAll(other);
+
+        assertTrue(other.isEmpty());
+        assertEquals(0, other.size());
+        other.insert(1);
+        assertEquals(3, queue.size());
+        assertEquals(16, queue.pop() + queue.pop() + queue.pop());
+    }
+
+    @Test
+    void testRebalanceWhileOthersPop() throws Exception {
+        SkewHeapMultiQueue queue = new SkewHeapMultiQueue(4);
+        for (int i = 0; i < 200000; i++)
+            queue.insert(i);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 50000; i++) {
+                    queue.pop();
+                    if (i % 3 == 0)
+                        queue.insert(i);
+                }
+            }));
+        }
+        for (int i = 0; i < 2000; i++)
+            queue.rebalance();
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+    }
+
+    @Test
+    void testConcurrentProducersAndConsumers() throws Exception {
+        final int threads = 4;
+        final int perThread = 100000;
+        SkewHeapMultiQueue queue = new SkewHeapMultiQueue(8);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2 * threads);
+        List<Future<int[]>> consumers = new ArrayList<>();
+        CountDownLatch produced = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * perThread;
+            executor.submit(() -> {
+                for (int i = 0; i < perThread; i++)
+                    queue.insert(offset + i);
+                produced.countDown();
+            });
+        }
+
+        for (int t = 0; t < threads; t++) {
+            consumers.add(executor.submit(() -> {
+                int[] popped = new int[threads * perThread];
+                int count = 0;
+                while (true) {
+                    try {
+                        popped[count] = queue.pop();
+                        count++;
+                    } catch (NoSuchElementException e) {
+                        if (produced.getCount() == 0 && queue.isEmpty())
+                            return Arrays.copyOf(popped, count);
+                    }
+                }
+            }));
+        }
+
+        boolean[] seen = new boolean[threads * perThread];
+        int total = 0;
+        for (Future<int[]> consumer : consumers) {
+            for (int i : consumer.get()) {
+                assertFalse(seen[i]);
+                seen[i] = true;
+                total++;
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(threads * perThread, total);
+    }
+
+    @Test
+    void testThroughputComparison() throws Exception {
+        final int opsPerThread = 200000;
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            SkewHeapMultiQueue multiQueue = new SkewHeapMultiQueue(2 * threads);
+            measureThroughput(threads, opsPerThread, multiQueue::insert, multiQueue::pop,
+                    "Skew heap multi queue");
+
+            SkewHeap heap = new SkewHeap();
+            measureThroughput(threads, opsPerThread, val -> {
+                synchronized (heap) {
+                    heap.insert(val);
+                }
+            }, () -> {
+                synchronized (heap) {
+                    return heap.pop();
+                }
+            }, "Synchronized skew heap");
+
+            PriorityBlockingQueue<Integer> pbq = new PriorityBlockingQueue<>();
+            measureThroughput(threads, opsPerThread, pbq::add, pbq::poll, "Priority blocking queue");
+        }
+    }
+
+    /**
+     * Fills the queue up front, then every thread alternates an insert with a pop so the queue never runs dry
+     */
+    private void measureThroughput(int threads, int opsPerThread, java.util.function.IntConsumer insert,
+                                   Callable<Integer> pop, String name) throws Exception {
+        for (int i : generateInput(10000, 100000))
+            insert.accept(i);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                start.await();
+                for (int i = 0; i < opsPerThread; i++) {
+                    insert.accept(rand.nextInt(100000));
+                    pop.call();
+                }
+                return null;
+            }));
+        }
+
+        start.await();
+        long startTime = System.nanoTime();
+        for (Future<?> future : futures)
+            future.get();
+        long endTime = System.nanoTime();
+        executor.shutdown();
+
+        long opsPerSecond = 2L * threads * opsPerThread * 1000000000L / (endTime - startTime);
+        System.out.println(String.format("Throughput for %s on %s threads %s ops per second", name, threads, opsPerSecond));
+    }
+
+    private int[] generateInput(int size, int maxVal) {
+        Random rand = new Random();
+        int[] input = new int[size];
+        for (int j = 0; j < size; j++) {
+            input[j] = rand.nextInt(maxVal);
+        }
+        return input;
+    }
+}
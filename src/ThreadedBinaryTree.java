@@ -2,9 +2,18 @@ import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -17,6 +26,11 @@ class TBNode {
     boolean isLeftThread;
     boolean isRightThread;
 
+    // height of the subtree counting real children only, a leaf has height 1
+    int height;
+    // number of nodes in the subtree
+    int size;
+
     int fVal;
 
     TBNode(int val) {
@@ -25,11 +39,23 @@ class TBNode {
 }
 
 
+/**
+ * Binary tree whose missing children are replaced by threads, a missing left child points at the in-order
+ * predecessor and a missing right child at the in-order successor, so in-order walks need no stack.
+ * <p>
+ * The tree keeps the order of the array it was built from. insert, delete and contains treat it as a search
+ * tree, so they need it to be built from sorted contents or grown from empty. They keep it AVL balanced and
+ * keep every thread correct as they go, so the tree can be walked at any point.
+ */
 class ThreadedBinaryTree {
     TBNode fHead;
 
+    ThreadedBinaryTree() {
+    }
+
     ThreadedBinaryTree(int[] contents) {
         fHead = construct(contents);
+        constructThreads();
     }
 
     private TBNode construct(int[] contents) {
@@ -52,9 +78,15 @@ class ThreadedBinaryTree {
 
         if (cur.left != null) cur.left.parent = cur;
         if (cur.right != null) cur.right.parent = cur;
+        // halves differ in size by at most one, so this is already AVL balanced
+        cur.height = 1 + Math.max(height(cur.left), height(cur.right));
+        cur.size = high - low;
         return cur;
     }
 
+    /**
+     * Fills in the threads, the constructor already does this so calling it again changes nothing
+     */
     void constructThreads() {
         constructThreads(fHead);
     }
@@ -62,8 +94,10 @@ class ThreadedBinaryTree {
     private void constructThreads(TBNode node) {
         if (node == null)
             return;
-        constructThreads(node.left);
-        constructThreads(node.right);
+        if (!node.isLeftThread)
+            constructThreads(node.left);
+        if (!node.isRightThread)
+            constructThreads(node.right);
 
         if (node.left == null) {
             node.isLeftThread = true;
@@ -107,8 +141,450 @@ class ThreadedBinaryTree {
         return tmp;
     }
 
+    private TBNode prev(TBNode node) {
+        if (node == null)
+            return null;
+
+        // mirror of next, a left thread is the previous inorder node
+        if (node.isLeftThread)
+            return node.left;
+
+        TBNode tmp = node.left;
+        while (!tmp.isRightThread)
+            tmp = tmp.right;
+        return tmp;
+    }
+
+    /**
+     * Hands every value in [lo, hi] to action in increasing order. Seeks the first value that is at least lo and
+     * then follows the threads, so k values cost O(log n + k) with no recursion or stack
+     */
+    void scan(int lo, int hi, IntConsumer action) {
+        for (TBNode cur = lowerBound(lo); cur != null && cur.fVal <= hi; cur = next(cur))
+            action.accept(cur.fVal);
+    }
+
+    /**
+     * Hands every value in [lo, hi] to action in decreasing order
+     */
+    void scanReverse(int lo, int hi, IntConsumer action) {
+        for (TBNode cur = floor(hi); cur != null && cur.fVal >= lo; cur = prev(cur))
+            action.accept(cur.fVal);
+    }
+
+    /**
+     * @return first node in order whose value is at least val, or null
+     */
+    private TBNode lowerBound(int val) {
+        TBNode ret = null;
+        TBNode cur = fHead;
+        while (cur != null) {
+            if (cur.fVal >= val) {
+                ret = cur;
+                cur = leftChild(cur);
+            } else cur = rightChild(cur);
+        }
+        return ret;
+    }
+
+    /**
+     * @return last node in order whose value is at most val, or null
+     */
+    private TBNode floor(int val) {
+        TBNode ret = null;
+        TBNode cur = fHead;
+        while (cur != null) {
+            if (cur.fVal <= val) {
+                ret = cur;
+                cur = rightChild(cur);
+            } else cur = leftChild(cur);
+        }
+        return ret;
+    }
+
+    boolean contains(int val) {
+        return find(val) != null;
+    }
+
+    private TBNode find(int val) {
+        TBNode cur = fHead;
+        while (cur != null) {
+            if (val == cur.fVal)
+                return cur;
+            cur = val < cur.fVal ? leftChild(cur) : rightChild(cur);
+        }
+        return null;
+    }
+
+    /**
+     * Adds val, equal values go after the ones already in the tree
+     */
+    void insert(int val) {
+        TBNode node = new TBNode(val);
+        node.height = 1;
+        node.size = 1;
+        node.isLeftThread = true;
+        node.isRightThread = true;
+        if (fHead == null) {
+            fHead = node;
+            return;
+        }
+
+        TBNode cur = fHead;
+        while (true) {
+            if (val < cur.fVal) {
+                if (cur.isLeftThread)
+                    break;
+                cur = cur.left;
+            } else {
+                if (cur.isRightThread)
+                    break;
+                cur = cur.right;
+            }
+        }
+
+        // the new leaf sits between cur and the node cur used to thread to on that side
+        node.parent = cur;
+        if (val < cur.fVal) {
+            node.left = cur.left;
+            node.right = cur;
+            cur.left = node;
+            cur.isLeftThread = false;
+        } else {
+            node.left = cur;
+            node.right = cur.right;
+            cur.right = node;
+            cur.isRightThread = false;
+        }
+        rebalance(cur);
+    }
+
+    /**
+     * Removes one occurrence of val
+     *
+     * @return whether val was in the tree
+     */
+    boolean delete(int val) {
+        TBNode node = find(val);
+        if (node == null)
+            return false;
+
+        // with two children, take over the successor's value and remove the successor instead, it has no left child
+        if (!node.isLeftThread && !node.isRightThread) {
+            TBNode succ = next(node);
+            node.fVal = succ.fVal;
+            node = succ;
+        }
+
+        TBNode parent = node.parent;
+        TBNode child;
+        if (!node.isRightThread) {
+            child = node.right;
+            // the leftmost node below the child threads back to node, point it past node instead
+            TBNode first = child;
+            while (!first.isLeftThread)
+                first = first.left;
+            first.left = node.left;
+        } else if (!node.isLeftThread) {
+            child = node.left;
+            TBNode last = child;
+            while (!last.isRightThread)
+                last = last.right;
+            last.right = node.right;
+        } else {
+            child = null;
+        }
+
+        if (child != null)
+            child.parent = parent;
+        if (parent == null) {
+            fHead = child;
+        } else if (parent.left == node && !parent.isLeftThread) {
+            if (child == null) {
+                parent.left = node.left;
+                parent.isLeftThread = true;
+            } else parent.left = child;
+        } else {
+            if (child == null) {
+                parent.right = node.right;
+                parent.isRightThread = true;
+            } else parent.right = child;
+        }
+        rebalance(parent);
+        return true;
+    }
+
+    /**
+     * Restores heights, sizes and AVL balance from node up to the root
+     */
+    private void rebalance(TBNode node) {
+        while (node != null) {
+            updateNode(node);
+            int balance = height(leftChild(node)) - height(rightChild(node));
+            if (balance > 1) {
+                TBNode left = node.left;
+                if (height(leftChild(left)) < height(rightChild(left)))
+                    rotateLeft(left);
+                node = rotateRight(node);
+            } else if (balance < -1) {
+                TBNode right = node.right;
+                if (height(rightChild(right)) < height(leftChild(right)))
+                    rotateRight(right);
+                node = rotateLeft(node);
+            }
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Lifts the left child of node above it
+     *
+     * @return the new root of the subtree
+     */
+    private TBNode rotateRight(TBNode node) {
+        TBNode pivot = node.left;
+        if (pivot.isRightThread) {
+            // pivot had nothing on its right so node ends up with nothing on its left, its predecessor is pivot
+            node.left = pivot;
+            node.isLeftThread = true;
+        } else {
+            node.left = pivot.right;
+            node.left.parent = node;
+        }
+        pivot.right = node;
+        pivot.isRightThread = false;
+
+        replaceChild(node, pivot);
+        node.parent = pivot;
+        updateNode(node);
+        updateNode(pivot);
+        return pivot;
+    }
+
+    private TBNode rotateLeft(TBNode node) {
+        TBNode pivot = node.right;
+        if (pivot.isLeftThread) {
+            node.right = pivot;
+            node.isRightThread = true;
+        } else {
+            node.right = pivot.left;
+            node.right.parent = node;
+        }
+        pivot.left = node;
+        pivot.isLeftThread = false;
+
+        replaceChild(node, pivot);
+        node.parent = pivot;
+        updateNode(node);
+        updateNode(pivot);
+        return pivot;
+    }
+
+    /**
+     * Puts replacement where node hangs from its parent
+     */
+    private void replaceChild(TBNode node, TBNode replacement) {
+        TBNode parent = node.parent;
+        replacement.parent = parent;
+        if (parent == null)
+            fHead = replacement;
+        else if (parent.left == node && !parent.isLeftThread)
+            parent.left = replacement;
+        else parent.right = replacement;
+    }
+
+    private static TBNode leftChild(TBNode node) {
+        return node.isLeftThread ? null : node.left;
+    }
+
+    private static TBNode rightChild(TBNode node) {
+        return node.isRightThread ? null : node.right;
+    }
+
+    private static int height(TBNode node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(TBNode node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void updateNode(TBNode node) {
+        node.height = 1 + Math.max(height(leftChild(node)), height(rightChild(node)));
+        node.size = 1 + size(leftChild(node)) + size(rightChild(node));
+    }
+
+    /**
+     * Value at in-order position k, counting from 0, found through the subtree sizes in O(log n)
+     */
+    int select(int k) {
+        return selectNode(k).fVal;
+    }
+
+    private TBNode selectNode(int k) {
+        if (k < 0 || k >= size())
+            throw new IndexOutOfBoundsException("No position " + k + " in a tree of " + size());
+
+        TBNode cur = fHead;
+        while (true) {
+            int leftSize = size(leftChild(cur));
+            if (k < leftSize) {
+                cur = cur.left;
+            } else if (k == leftSize) {
+                return cur;
+            } else {
+                k -= leftSize + 1;
+                cur = cur.right;
+            }
+        }
+    }
+
+    /**
+     * Counts the values smaller than val, so select(rank(val)) is the first value that is at least val.
+     * Like contains, this needs the tree in search order
+     */
+    int rank(int val) {
+        int ret = 0;
+        TBNode cur = fHead;
+        while (cur != null) {
+            if (cur.fVal < val) {
+                ret += size(leftChild(cur)) + 1;
+                cur = rightChild(cur);
+            } else cur = leftChild(cur);
+        }
+        return ret;
+    }
+
+    int size() {
+        return size(fHead);
+    }
+
+    /**
+     * Lazy in-order iterator, finding the first value costs O(log n) and each step after that O(1) amortized.
+     * Changing the tree while iterating is not supported
+     */
+    PrimitiveIterator.OfInt iterator() {
+        return iterator(fHead == null ? null : leftmost(fHead));
+    }
+
+    /**
+     * Lazy in-order iterator starting at position k, counting from 0. Seeking costs O(log n) like select
+     */
+    PrimitiveIterator.OfInt iterator(int k) {
+        return iterator(k == size() ? null : selectNode(k));
+    }
+
+    private PrimitiveIterator.OfInt iterator(TBNode start) {
+        return new PrimitiveIterator.OfInt() {
+            private TBNode fNext = start;
+
+            @Override
+            public boolean hasNext() {
+                return fNext != null;
+            }
+
+            @Override
+            public int nextInt() {
+                if (fNext == null)
+                    throw new NoSuchElementException();
+                int val = fNext.fVal;
+                fNext = ThreadedBinaryTree.this.next(fNext);
+                return val;
+            }
+        };
+    }
+
+    /**
+     * In-order stream of the values, a parallel stream splits the tree at subtree roots
+     */
+    IntStream stream(boolean parallel) {
+        return StreamSupport.intStream(spliterator(), parallel);
+    }
+
+    Spliterator.OfInt spliterator() {
+        if (fHead == null)
+            return Spliterators.emptyIntSpliterator();
+        return new InorderSpliterator(fHead, null);
+    }
+
+    /**
+     * Covers the whole subtree of fRoot followed by the nodes after it up to fEnd, exclusive. Until the first
+     * value is taken it can split off the left subtree and the root, keeping the right subtree for itself
+     */
+    private class InorderSpliterator implements Spliterator.OfInt {
+        private TBNode fRoot;
+        private TBNode fNext;
+        private final TBNode fEnd;
+
+        InorderSpliterator(TBNode root, TBNode end) {
+            fRoot = root;
+            fNext = leftmost(root);
+            fEnd = end;
+        }
+
+        @Override
+        public OfInt trySplit() {
+            if (fRoot == null || (fRoot.isLeftThread && fRoot.isRightThread))
+                return null;
+
+            TBNode root = fRoot;
+            TBNode after = next(root);
+            InorderSpliterator prefix = new InorderSpliterator(root, after);
+            prefix.fRoot = root.isLeftThread ? null : root.left;
+
+            if (root.isRightThread) {
+                fRoot = null;
+                fNext = after;
+            } else {
+                fRoot = root.right;
+                fNext = leftmost(root.right);
+            }
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (fNext == fEnd)
+                return false;
+            fRoot = null;
+            action.accept(fNext.fVal);
+            fNext = next(fNext);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            fRoot = null;
+            for (TBNode cur = fNext; cur != fEnd; cur = next(cur))
+                action.accept(cur.fVal);
+            fNext = fEnd;
+        }
+
+        @Override
+        public long estimateSize() {
+            if (fNext == fEnd)
+                return 0;
+            // exact until the first split that leaves nodes after the subtree
+            return fRoot == null ? 1 : fRoot.size;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    private static TBNode leftmost(TBNode node) {
+        while (!node.isLeftThread)
+            node = node.left;
+        return node;
+    }
+
     List<Integer> inorder() {
         List<Integer> ret = new ArrayList<>();
+        if (fHead == null)
+            return ret;
+
         TBNode cur = fHead;
         while (cur.left != null)
             cur = cur.left;
@@ -184,6 +660,400 @@ class ThreadedBinaryTreeTest {
         }
     }
 
+    @Test
+    void testInsertDeleteContains() {
+        ThreadedBinaryTree tb = new ThreadedBinaryTree();
+        assertTrue(tb.inorder().isEmpty());
+        assertFalse(tb.contains(1));
+
+        for (int val : new int[]{5, 3, 8, 1, 4, 7, 9, 2, 6})
+            tb.insert(val);
+        assertValidTree(tb);
+        assertEquals(toList(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9}), tb.inorder());
+        assertTrue(tb.contains(6));
+        assertFalse(tb.contains(10));
+
+        assertTrue(tb.delete(5));
+        assertFalse(tb.delete(5));
+        assertTrue(tb.delete(1));
+        assertValidTree(tb);
+        assertEquals(toList(new int[]{2, 3, 4, 6, 7, 8, 9}), tb.inorder());
+    }
+
+    @Test
+    void testSortedInsertsStayBalanced() {
+        ThreadedBinaryTree tb = new ThreadedBinaryTree();
+        final int size = 1 << 16;
+        for (int i = 0; i < size; i++)
+            tb.insert(i);
+
+        assertValidTree(tb);
+        // an AVL tree is at most about 1.44 log n high
+        assertTrue(tb.fHead.height <= 1.45 * 16);
+
+        for (int i = 0; i < size; i += 2)
+            assertTrue(tb.delete(i));
+        assertValidTree(tb);
+        assertEquals(size / 2, tb.inorder().size());
+    }
+
+    @Test
+    void testMutationsOnConstructedTree() {
+        int[] input = new int[]{1, 3, 5, 7, 9, 11, 13};
+        ThreadedBinaryTree tb = new ThreadedBinaryTree(input);
+
+        tb.insert(6);
+        tb.insert(3);
+        assertTrue(tb.delete(7));
+        assertValidTree(tb);
+        assertEquals(toList(new int[]{1, 3, 3, 5, 6, 9, 11, 13}), tb.inorder());
+    }
+
+    @Test
+    void testRandomMutationsAgainstTreeMap() {
+        Random rand = new Random();
+        ThreadedBinaryTree tb = new ThreadedBinaryTree();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+
+        for (int trial = 0; trial < 20000; trial++) {
+            int val = rand.nextInt(500);
+            switch (rand.nextInt(3)) {
+                case 0:
+                    tb.insert(val);
+                    expected.merge(val, 1, Integer::sum);
+                    break;
+                case 1:
+                    assertEquals(expected.containsKey(val), tb.delete(val));
+                    expected.computeIfPresent(val, (k, count) -> count == 1 ? null : count - 1);
+                    break;
+                default:
+                    assertEquals(expected.containsKey(val), tb.contains(val));
+            }
+
+            if (trial % 1000 == 0) {
+                assertValidTree(tb);
+                List<Integer> values = new ArrayList<>();
+                expected.forEach((k, count) -> {
+                    for (int i = 0; i < count; i++)
+                        values.add(k);
+                });
+                assertEquals(values, tb.inorder());
+            }
+        }
+    }
+
+    @Test
+    void testIterator() {
+        int[] input = generateInput(1000, 10000);
+        ThreadedBinaryTree tb = new ThreadedBinaryTree(input);
+
+        PrimitiveIterator.OfInt it = tb.iterator();
+        for (int val : input) {
+            assertTrue(it.hasNext());
+            assertEquals(val, it.nextInt());
+        }
+        assertFalse(it.hasNext());
+        assertThrows(NoSuchElementException.class, it::nextInt);
+
+        assertFalse(new ThreadedBinaryTree().iterator().hasNext());
+        assertEquals(0, new ThreadedBinaryTree(new int[0]).stream(false).count());
+    }
+
+    @Test
+    void testStream() {
+        for (int size = 1; size < 200; size++) {
+            int[] input = generateInput(size, 10000);
+            ThreadedBinaryTree tb = new ThreadedBinaryTree(input);
+
+            assertArrayEquals(input, tb.stream(false).toArray());
+            assertArrayEquals(input, tb.stream(true).toArray());
+            assertEquals(Arrays.stream(input).sum(), tb.stream(true).sum());
+        }
+    }
+
+    @Test
+    void testSpliteratorSplitsIntoInorderRanges() {
+        int[] input = generateInput(1000, 10000);
+        ThreadedBinaryTree tb = new ThreadedBinaryTree(input);
+
+        // keep splitting the pieces until none can split, then read them back in order
+        List<Spliterator.OfInt> pieces = new ArrayList<>();
+        pieces.add(tb.spliterator());
+        for (int i = 0; i < pieces.size(); ) {
+            Spliterator.OfInt prefix = pieces.get(i).trySplit();
+            if (prefix != null)
+                pieces.add(i, prefix);
+            else i++;
+        }
+        assertTrue(pieces.size() > input.length / 4);
+
+        List<Integer> values = new ArrayList<>();
+        for (Spliterator.OfInt piece : pieces)
+            piece.forEachRemaining((IntConsumer) values::add);
+        assertEquals(toList(input), values);
+    }
+
+    @Test
+    void testIterationAfterMutations() {
+        ThreadedBinaryTree tb = new ThreadedBinaryTree();
+        Random rand = new Random();
+        for (int i = 0; i < 1000; i++)
+            tb.insert(rand.nextInt(100));
+        for (int i = 0; i < 300; i++)
+            tb.delete(rand.nextInt(100));
+
+        int[] expected = tb.inorder().stream().mapToInt(Integer::intValue).toArray();
+        assertArrayEquals(expected, tb.stream(true).toArray());
+    }
+
+    @Test
+    void testFirstElementRuntimeComparison() {
+        int[] input = generateInput(10000000, 10000);
+        ThreadedBinaryTree tb = new ThreadedBinaryTree(input);
+
+        int[] first = new int[2];
+        measureRuntime(() -> first[0] = tb.inorder().get(0),
+                "Duration for the first value of a 10M tree through inorder %s nanoseconds");
+        measureRuntime(() -> first[1] = tb.iterator().nextInt(),
+                "Duration for the first value of a 10M tree through iterator %s nanoseconds");
+        assertEquals(first[0], first[1]);
+
+        long[] sums = new long[2];
+        measureRuntime(() -> sums[0] = tb.stream(false).asLongStream().sum(),
+                "Duration for summing a 10M tree through a sequential stream %s nanoseconds");
+        measureRuntime(() -> sums[1] = tb.stream(true).asLongStream().sum(),
+                "Duration for summing a 10M tree through a parallel stream %s nanoseconds");
+        assertEquals(sums[0], sums[1]);
+    }
+
+    @Test
+    void testScan() {
+        int[] input = new int[]{1, 3, 3, 5, 7, 9, 11};
+        ThreadedBinaryTree tb = new ThreadedBinaryTree(input);
+
+        List<Integer> values = new ArrayList<>();
+        tb.scan(3, 9, values::add);
+        assertEquals(toList(new int[]{3, 3, 5, 7, 9}), values);
+
+        values.clear();
+        tb.scanReverse(2, 8, values::add);
+        assertEquals(toList(new int[]{7, 5, 3, 3}), values);
+
+        values.clear();
+        tb.scan(12, 20, values::add);
+        tb.scan(4, 4, values::add);
+        tb.scanReverse(-5, 0, values::add);
+        tb.scan(9, 2, values::add);
+        assertTrue(values.isEmpty());
+    }
+
+    @Test
+    void testRandomScansAgainstFilter() {
+        Random rand = new Random();
+        ThreadedBinaryTree tb = new ThreadedBinaryTree();
+        for (int trial = 0; trial < 2000; trial++) {
+            if (rand.nextInt(3) == 0)
+                tb.delete(rand.nextInt(1000));
+            else tb.insert(rand.nextInt(1000));
+
+            int lo = rand.nextInt(1100) - 50;
+            int hi = lo + rand.nextInt(300);
+            List<Integer> expected = new ArrayList<>();
+            for (int val : tb.inorder()) {
+                if (lo <= val && val <= hi)
+                    expected.add(val);
+            }
+
+            List<Integer> values = new ArrayList<>();
+            tb.scan(lo, hi, values::add);
+            assertEquals(expected, values);
+
+            values.clear();
+            tb.scanReverse(lo, hi, values::add);
+            Collections.reverse(values);
+            assertEquals(expected, values);
+        }
+    }
+
+    @Test
+    void testScanRuntimeComparison() {
+        final int queries = 3;
+        int[] input = generateInput(10000000, Integer.MAX_VALUE);
+        Arrays.sort(input);
+        ThreadedBinaryTree tb = new ThreadedBinaryTree(input);
+
+        Random rand = new Random();
+        int[] los = new int[queries];
+        for (int i = 0; i < queries; i++)
+            los[i] = input[rand.nextInt(input.length - 100)];
+
+        // ranges about 100 values wide
+        final int width = Integer.MAX_VALUE / input.length * 100;
+        long[] sums = new long[2];
+        measureRuntime(() -> {
+            for (int lo : los) {
+                for (int val : tb.inorder()) {
+                    if (lo <= val && val <= lo + width)
+                        sums[0] += val;
+                }
+            }
+        }, "Duration for 3 range reads through inorder and a filter %s nanoseconds");
+
+        measureRuntime(() -> {
+            for (int lo : los)
+                tb.scan(lo, lo + width, val -> sums[1] += val);
+        }, "Duration for 3 range reads through scan %s nanoseconds");
+        assertEquals(sums[0], sums[1]);
+    }
+
+    @Test
+    void testSelectAndRank() {
+        int[] input = new int[]{1, 3, 3, 5, 7, 9, 11};
+        ThreadedBinaryTree tb = new ThreadedBinaryTree(input);
+
+        assertEquals(7, tb.size());
+        for (int k = 0; k < input.length; k++)
+            assertEquals(input[k], tb.select(k));
+        assertThrows(IndexOutOfBoundsException.class, () -> tb.select(7));
+        assertThrows(IndexOutOfBoundsException.class, () -> tb.select(-1));
+
+        assertEquals(0, tb.rank(1));
+        assertEquals(1, tb.rank(3));
+        assertEquals(3, tb.rank(4));
+        assertEquals(7, tb.rank(100));
+        assertEquals(5, tb.select(tb.rank(4)));
+    }
+
+    @Test
+    void testIteratorFromPosition() {
+        int[] input = new int[]{2, 4, 6, 8, 10};
+        ThreadedBinaryTree tb = new ThreadedBinaryTree(input);
+
+        PrimitiveIterator.OfInt it = tb.iterator(2);
+        assertEquals(6, it.nextInt());
+        assertEquals(8, it.nextInt());
+        assertEquals(10, it.nextInt());
+        assertFalse(it.hasNext());
+        assertFalse(tb.iterator(5).hasNext());
+        assertThrows(IndexOutOfBoundsException.class, () -> tb.iterator(6));
+    }
+
+    @Test
+    void testRandomSelectRankAgainstSortedList() {
+        Random rand = new Random();
+        ThreadedBinaryTree tb = new ThreadedBinaryTree(new int[]{100, 200, 300});
+        List<Integer> expected = new ArrayList<>(toList(new int[]{100, 200, 300}));
+
+        for (int trial = 0; trial < 5000; trial++) {
+            int val = rand.nextInt(1000);
+            if (rand.nextInt(3) == 0) {
+                if (tb.delete(val))
+                    expected.remove((Integer) val);
+            } else {
+                tb.insert(val);
+                int pos = 0;
+                while (pos < expected.size() && expected.get(pos) <= val)
+                    pos++;
+                expected.add(pos, val);
+            }
+
+            assertEquals(expected.size(), tb.size());
+            if (!expected.isEmpty()) {
+                int k = rand.nextInt(expected.size());
+                assertEquals((int) expected.get(k), tb.select(k));
+                assertEquals(expected.get(k), tb.iterator(k).next());
+            }
+
+            int x = rand.nextInt(1100) - 50;
+            int smaller = 0;
+            while (smaller < expected.size() && expected.get(smaller) < x)
+                smaller++;
+            assertEquals(smaller, tb.rank(x));
+
+            if (trial % 500 == 0)
+                assertValidTree(tb);
+        }
+    }
+
+    @Test
+    void testPercentileRuntimeComparison() {
+        final int queries = 1000;
+        int[] input = generateInput(1000000, Integer.MAX_VALUE);
+        Arrays.sort(input);
+        ThreadedBinaryTree tb = new ThreadedBinaryTree(input);
+
+        Random rand = new Random();
+        int[] ks = new int[queries];
+        for (int i = 0; i < queries; i++)
+            ks[i] = rand.nextInt(input.length);
+
+        long[] sums = new long[2];
+        measureRuntime(() -> {
+            for (int k : ks) {
+                PrimitiveIterator.OfInt it = tb.iterator();
+                for (int i = 0; i < k; i++)
+                    it.nextInt();
+                sums[0] += it.nextInt();
+            }
+        }, "Duration for 1K selects on a 1M tree by walking %s nanoseconds");
+
+        measureRuntime(() -> {
+            for (int k : ks)
+                sums[1] += tb.select(k);
+        }, "Duration for 1K selects on a 1M tree through subtree sizes %s nanoseconds");
+        assertEquals(sums[0], sums[1]);
+    }
+
+    private void measureRuntime(Runnable r, String msg) {
+        long startTime = System.nanoTime();
+        r.run();
+        long endTime = System.nanoTime();
+        System.out.println(String.format(msg, (endTime - startTime)));
+    }
+
+    /**
+     * Checks parents, heights, sizes, AVL balance, search order and that every thread points at the in-order neighbour
+     */
+    private void assertValidTree(ThreadedBinaryTree tb) {
+        List<TBNode> nodes = new ArrayList<>();
+        if (tb.fHead != null) {
+            assertNull(tb.fHead.parent);
+            collect(tb.fHead, nodes);
+        }
+
+        for (int i = 0; i < nodes.size(); i++) {
+            TBNode node = nodes.get(i);
+            TBNode pred = i > 0 ? nodes.get(i - 1) : null;
+            TBNode succ = i + 1 < nodes.size() ? nodes.get(i + 1) : null;
+            if (pred != null)
+                assertTrue(pred.fVal <= node.fVal);
+            if (node.isLeftThread)
+                assertSame(pred, node.left);
+            if (node.isRightThread)
+                assertSame(succ, node.right);
+        }
+    }
+
+    private int collect(TBNode node, List<TBNode> nodes) {
+        int before = nodes.size();
+        int leftHeight = 0;
+        int rightHeight = 0;
+        if (!node.isLeftThread) {
+            assertSame(node, node.left.parent);
+            leftHeight = collect(node.left, nodes);
+        }
+        nodes.add(node);
+        if (!node.isRightThread) {
+            assertSame(node, node.right.parent);
+            rightHeight = collect(node.right, nodes);
+        }
+
+        assertTrue(Math.abs(leftHeight - rightHeight) <= 1);
+        assertEquals(1 + Math.max(leftHeight, rightHeight), node.height);
+        assertEquals(nodes.size() - before, node.size);
+        return node.height;
+    }
+
     private int[] generateInput(int size, int maxVal) {
         Random rand = new Random();
         int[] input = new int[size];
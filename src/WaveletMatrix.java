@@ -0,0 +1,328 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Answers order statistics over index ranges of a fixed array, such as how many values in [start, end] are at most x
+ * or which value is the k-th smallest there, both in O(log n).
+ * <p>
+ * Values are first replaced by their rank among the distinct values. Level 0 stores the top bit of every rank, then
+ * the elements are stably split into those with a 0 bit followed by those with a 1 bit, and level 1 stores the next
+ * bit in that order, and so on. A range at one level maps to one range in each half of the next level, found by
+ * counting ones before its ends, so a query follows a single range down through the levels. Bits are packed into
+ * longs with a running count of ones per word so counting takes one popcount. All of it is about n log n bits
+ * plus the n distinct values.
+ */
+class WaveletMatrix {
+
+    private final int fSize;
+    private final int fLevels;
+    private final int fWords;
+
+    // distinct values in increasing order, ranks index into this
+    private final int[] fValues;
+    // bits of level l are fBits[l * fWords] onwards
+    private final long[] fBits;
+    // ones in the words of a level before each word, fWords + 1 entries per level
+    private final int[] fOnes;
+    // elements with a 0 bit at each level, they come first in the next level
+    private final int[] fZeros;
+
+    WaveletMatrix(int[] arr) {
+        fSize = arr.length;
+        fValues = distinct(arr);
+        fLevels = fValues.length <= 1 ? 1 : 32 - Integer.numberOfLeadingZeros(fValues.length - 1);
+        fWords = (fSize >>> 6) + 1;
+        fBits = new long[fLevels * fWords];
+        fOnes = new int[fLevels * (fWords + 1)];
+        fZeros = new int[fLevels];
+
+        int[] cur = new int[fSize];
+        for (int i = 0; i < fSize; i++)
+            cur[i] = Arrays.binarySearch(fValues, arr[i]);
+        buildLevels(cur);
+    }
+
+    private static int[] distinct(int[] arr) {
+        int[] sorted = arr.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1])
+                sorted[count++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, count);
+    }
+
+    private void buildLevels(int[] cur) {
+        int[] next = new int[fSize];
+        for (int level = 0; level < fLevels; level++) {
+            int shift = fLevels - 1 - level;
+            int bits = level * fWords;
+            int zeros = 0;
+            for (int i = 0; i < fSize; i++) {
+                if ((cur[i] >>> shift & 1) == 1)
+                    fBits[bits + (i >>> 6)] |= 1L << (i & 63);
+                else zeros++;
+            }
+            fZeros[level] = zeros;
+
+            int ones = level * (fWords + 1);
+            for (int w = 0; w < fWords; w++)
+                fOnes[ones + w + 1] = fOnes[ones + w] + Long.bitCount(fBits[bits + w]);
+
+            int zero = 0;
+            int one = zeros;
+            for (int i = 0; i < fSize; i++) {
+                if ((cur[i] >>> shift & 1) == 1)
+                    next[one++] = cur[i];
+                else next[zero++] = cur[i];
+            }
+            int[] tmp = cur;
+            cur = next;
+            next = tmp;
+        }
+    }
+
+    /**
+     * @return number of ones among the first pos bits of level
+     */
+    private int rankOne(int level, int pos) {
+        int word = pos >>> 6;
+        long mask = (1L << (pos & 63)) - 1;
+        return fOnes[level * (fWords + 1) + word] + Long.bitCount(fBits[level * fWords + word] & mask);
+    }
+
+    /**
+     * Counts the values in the range that are at most x
+     *
+     * @param start start of the range inclusive
+     * @param end   end of the range inclusive
+     */
+    int countAtMost(int start, int end, int x) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+        if (start > end)
+            return 0;
+
+        // ranks below this one belong to values <= x
+        int bound = upperBound(x);
+        if (bound >>> fLevels != 0)
+            return end - start + 1;
+
+        int low = start;
+        int high = end + 1;
+        int ret = 0;
+        for (int level = 0; level < fLevels; level++) {
+            int lowOnes = rankOne(level, low);
+            int highOnes = rankOne(level, high);
+            if ((bound >>> (fLevels - 1 - level) & 1) == 1) {
+                ret += (high - low) - (highOnes - lowOnes);
+                low = fZeros[level] + lowOnes;
+                high = fZeros[level] + highOnes;
+            } else {
+                low -= lowOnes;
+                high -= highOnes;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Counts the values in the range that lie in [low, high]
+     */
+    int countBetween(int start, int end, int low, int high) {
+        if (low > high)
+            return 0;
+        int below = low == Integer.MIN_VALUE ? 0 : countAtMost(start, end, low - 1);
+        return countAtMost(start, end, high) - below;
+    }
+
+    /**
+     * Finds the k-th smallest value in the range, counting from 1 and including duplicates
+     *
+     * @param start start of the range inclusive
+     * @param end   end of the range inclusive
+     */
+    int kthSmallest(int start, int end, int k) {
+        start = Math.max(start, 0);
+        end = Math.min(end, fSize - 1);
+        if (k < 1 || k > end - start + 1)
+            throw new IllegalArgumentException("No " + k + "th value in a range of " + Math.max(0, end - start + 1));
+
+        int low = start;
+        int high = end + 1;
+        int rank = 0;
+        k--;
+        for (int level = 0; level < fLevels; level++) {
+            int lowOnes = rankOne(level, low);
+            int highOnes = rankOne(level, high);
+            int zeros = (high - low) - (highOnes - lowOnes);
+            rank <<= 1;
+            if (k < zeros) {
+                low -= lowOnes;
+                high -= highOnes;
+            } else {
+                k -= zeros;
+                rank |= 1;
+                low = fZeros[level] + lowOnes;
+                high = fZeros[level] + highOnes;
+            }
+        }
+        return fValues[rank];
+    }
+
+    /**
+     * @return number of distinct values that are at most x
+     */
+    private int upperBound(int x) {
+        int low = 0;
+        int high = fValues.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (fValues[mid] <= x)
+                low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    int get(int index) {
+        return kthSmallest(index, index, 1);
+    }
+
+    int size() {
+        return fSize;
+    }
+}
+
+
+class WaveletMatrixTest {
+
+    @Test
+    void testCountAndKth() {
+        int[] input = new int[]{5, 1, 4, 1, 3, 9, 2, 6};
+        WaveletMatrix wm = new WaveletMatrix(input);
+
+        assertEquals(4, wm.countAtMost(0, 7, 3));
+        assertEquals(2, wm.countAtMost(1, 4, 1));
+        assertEquals(0, wm.countAtMost(0, 7, 0));
+        assertEquals(8, wm.countAtMost(-5, 50, 100));
+        assertEquals(4, wm.countBetween(0, 7, 2, 5));
+
+        assertEquals(1, wm.kthSmallest(0, 7, 1));
+        assertEquals(1, wm.kthSmallest(0, 7, 2));
+        assertEquals(2, wm.kthSmallest(0, 7, 3));
+        assertEquals(9, wm.kthSmallest(0, 7, 8));
+        assertEquals(4, wm.kthSmallest(2, 5, 3));
+        assertEquals(9, wm.get(5));
+
+        assertThrows(IllegalArgumentException.class, () -> wm.kthSmallest(2, 5, 5));
+        assertThrows(IllegalArgumentException.class, () -> wm.kthSmallest(2, 5, 0));
+    }
+
+    @Test
+    void testSingleValue() {
+        WaveletMatrix wm = new WaveletMatrix(new int[]{7, 7, 7});
+
+        assertEquals(3, wm.countAtMost(0, 2, 7));
+        assertEquals(0, wm.countAtMost(0, 2, 6));
+        assertEquals(7, wm.kthSmallest(0, 2, 2));
+    }
+
+    @Test
+    void testRandomAgainstBruteForce() {
+        Random rand = new Random();
+        for (int size : new int[]{1, 2, 63, 64, 65, 500}) {
+            for (int maxVal : new int[]{2, 100, Integer.MAX_VALUE}) {
+                int[] input = new int[size];
+                for (int i = 0; i < size; i++)
+                    input[i] = rand.nextInt(maxVal) - maxVal / 2;
+                WaveletMatrix wm = new WaveletMatrix(input);
+
+                for (int trial = 0; trial < 300; trial++) {
+                    int start = rand.nextInt(size);
+                    int end = start + rand.nextInt(size - start);
+                    int[] range = Arrays.copyOfRange(input, start, end + 1);
+                    Arrays.sort(range);
+
+                    int k = 1 + rand.nextInt(range.length);
+                    assertEquals(range[k - 1], wm.kthSmallest(start, end, k));
+
+                    int x = rand.nextBoolean() ? range[rand.nextInt(range.length)] : rand.nextInt(maxVal) - maxVal / 2;
+                    int expected = 0;
+                    for (int val : range) {
+                        if (val <= x)
+                            expected++;
+                    }
+                    assertEquals(expected, wm.countAtMost(start, end, x));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testRuntimeComparison() {
+        final int queries = 100000;
+        int[] input = generateInput(1000000, Integer.MAX_VALUE);
+
+        long startTime = System.nanoTime();
+        WaveletMatrix wm = new WaveletMatrix(input);
+        long endTime = System.nanoTime();
+        System.out.println(String.format("Duration for building a 1M wavelet matrix %s nanoseconds", (endTime - startTime)));
+
+        Random rand = new Random();
+        int[] starts = new int[queries];
+        int[] ends = new int[queries];
+        int[] xs = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            starts[i] = rand.nextInt(input.length);
+            ends[i] = starts[i] + rand.nextInt(Math.min(10000, input.length - starts[i]));
+            xs[i] = rand.nextInt(Integer.MAX_VALUE);
+        }
+
+        long[] totals = new long[2];
+        measureRuntime(() -> {
+            for (int i = 0; i < queries; i++) {
+                for (int j = starts[i]; j <= ends[i]; j++) {
+                    if (input[j] <= xs[i])
+                        totals[0]++;
+                }
+            }
+        }, "Duration for 100K range counts by scanning %s nanoseconds");
+
+        measureRuntime(() -> {
+            for (int i = 0; i < queries; i++)
+                totals[1] += wm.countAtMost(starts[i], ends[i], xs[i]);
+        }, "Duration for 100K range counts on a wavelet matrix %s nanoseconds");
+        assertEquals(totals[0], totals[1]);
+
+        measureRuntime(() -> {
+            for (int i = 0; i < queries; i++)
+                totals[1] += wm.kthSmallest(starts[i], ends[i], 1 + (ends[i] - starts[i]) / 2);
+        }, "Duration for 100K range medians on a wavelet matrix %s nanoseconds");
+        assertTrue(totals[1] != 0);
+    }
+
+    private int[] generateInput(int size, int maxVal) {
+        Random rand = new Random();
+        int[] input = new int[size];
+        for (int j = 0; j < size; j++) {
+            input[j] = rand.nextInt(maxVal);
+        }
+        return input;
+    }
+
+    private void measureRuntime(Runnable r, String msg) {
+        long startTime = System.nanoTime();
+        r.run();
+        long endTime = System.nanoTime();
+        System.out.println(String.format(msg, (endTime - startTime)));
+    }
+}